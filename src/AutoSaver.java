@@ -0,0 +1,219 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Saves the vocabulary to a file in the background, a short while after it changes.
+ * <p>
+ * The saver listens to a {@link VocabList} and only notes that something changed and when, so edits never wait
+ * for it. A background thread waits until the list has been quiet for a moment, or until the oldest unsaved
+ * change reaches a maximum age during a long burst of edits, and then writes the latest version published by a
+ * {@link SnapshotPublisher}. A whole burst of edits therefore costs one write, and the write sees one consistent
+ * version even while the user keeps editing. The file is written next to the target under a temporary name and
+ * moved over it, so a crash mid-write leaves the previous save intact.
+ * </p>
+ */
+class AutoSaver implements VocabListener {
+
+    private final VocabList vocabList;
+    private final SnapshotPublisher snapshots;
+    private final File file;
+    private final long quietMillis;
+    private final long maxDelayMillis;
+    private final Thread thread;
+
+    // guarded by this
+    private boolean dirty;
+    private boolean closed;
+    private boolean attaching;
+    private long firstChange;
+    private long lastChange;
+
+    private volatile int saves;
+    private final AtomicReference<String> lastError = new AtomicReference<>();
+
+    /**
+     * Starts saving a list to a file. The saver registers itself with the list, and the list's current content
+     * is saved right away in the background.
+     *
+     * @param vocabList the list to watch for changes
+     * @param snapshots the publisher of versions of that list, registered with it before this saver
+     * @param file the file to save to, compressed if its name ends in {@code .gz}
+     * @param quietMillis how long the list must be left unchanged before it is saved
+     * @param maxDelayMillis how long a change may stay unsaved at most while edits keep coming
+     */
+    public AutoSaver(VocabList vocabList, SnapshotPublisher snapshots, File file, long quietMillis, long maxDelayMillis) {
+        this.vocabList = vocabList;
+        this.snapshots = snapshots;
+        this.file = file.getAbsoluteFile();
+        this.quietMillis = quietMillis;
+        this.maxDelayMillis = maxDelayMillis;
+
+        // topics already in the list are reported as added on registration; they are not a change to save
+        synchronized (this) {
+            attaching = true;
+        }
+        vocabList.addListener(this);
+        synchronized (this) {
+            attaching = false;
+            // due at once
+            dirty = true;
+            firstChange = System.currentTimeMillis() - maxDelayMillis;
+            lastChange = firstChange;
+        }
+
+        thread = new Thread(this::run, "autosave");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the file saved to.
+     *
+     * @return the absolute file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of saves written so far.
+     *
+     * @return the number of saves
+     */
+    public int getSaves() {
+        return saves;
+    }
+
+    /**
+     * Returns and clears the message of the last failed save.
+     *
+     * @return the error message, or null if no save has failed since the last call
+     */
+    public String takeError() {
+        return lastError.getAndSet(null);
+    }
+
+    /**
+     * Stops saving. Changes not yet saved are written first, on the calling thread.
+     *
+     * @throws IOException if the final save fails
+     */
+    public void close() throws IOException {
+        vocabList.removeListener(this);
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // read only once the thread is done, since a save it was running may have failed and left the list dirty
+        boolean pending;
+        synchronized (this) {
+            pending = dirty;
+            dirty = false;
+        }
+        if (pending) {
+            save(snapshots.current());
+        }
+    }
+
+    @Override
+    public void topicAdded(int index, Vocab vocab) {
+        changed();
+    }
+
+    @Override
+    public void topicRemoved(int index, Vocab vocab) {
+        changed();
+    }
+
+    @Override
+    public void topicRenamed(Vocab vocab, String oldTopic) {
+        changed();
+    }
+
+    @Override
+    public void wordAdded(Vocab vocab, String word) {
+        changed();
+    }
+
+    @Override
+    public void wordDeleted(Vocab vocab, String word) {
+        changed();
+    }
+
+    private synchronized void changed() {
+        if (attaching) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!dirty) {
+            dirty = true;
+            firstChange = now;
+            notifyAll();
+        }
+        lastChange = now;
+    }
+
+    private void run() {
+        while (true) {
+            PersistentVocabList snapshot;
+            synchronized (this) {
+                try {
+                    while (!closed) {
+                        long now = System.currentTimeMillis();
+                        if (dirty) {
+                            long due = Math.min(lastChange + quietMillis, firstChange + maxDelayMillis);
+                            if (now >= due) {
+                                break;
+                            }
+                            wait(due - now);
+                        } else {
+                            wait();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                // the publisher hears of every change before this saver, so the snapshot holds all changes
+                // that marked the list dirty; later ones mark it dirty again
+                dirty = false;
+                snapshot = snapshots.current();
+            }
+            try {
+                save(snapshot);
+            } catch (IOException e) {
+                lastError.set(e.getMessage());
+                synchronized (this) {
+                    // try again after the next quiet period
+                    if (!dirty) {
+                        dirty = true;
+                        firstChange = System.currentTimeMillis();
+                    }
+                    lastChange = System.currentTimeMillis();
+                }
+            }
+        }
+    }
+
+    private void save(PersistentVocabList snapshot) throws IOException {
+        // same suffix as the target, so a .gz target is written compressed
+        File temp = new File(file.getParentFile(), ".autosave-" + file.getName());
+        PrintWriter pw = VocabFiles.openWriter(temp.getPath());
+        VocabFiles.write(snapshot, pw);
+        pw.close();
+        if (pw.checkError()) {
+            throw new IOException("Could not write " + temp);
+        }
+        VocabFiles.replace(temp, file);
+        saves++;
+    }
+}
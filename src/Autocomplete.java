@@ -0,0 +1,320 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ranked type-ahead suggestions over every word of a {@link VocabList}.
+ * <p>
+ * Words are stored in a trie. Each word is ranked by the number of distinct topics it appears in, with ties
+ * broken by {@link WordOrder}; a second copy of a word in the same topic does not change its rank. Every trie
+ * node caches the best {@code capacity} words below it, so a query only walks down the prefix and copies the
+ * cached list, no matter how many words share the prefix.
+ * </p>
+ * <p>
+ * When a word's rank changes, the caches on its path are brought up to date from the word towards the root.
+ * A cache the word stays in, or newly enters, is adjusted in place. Only a cache the word drops out of is
+ * recomputed from the node's own word and its children's caches, since the word that takes its place is not
+ * cached there. As soon as a cache neither holds the word nor takes it in, the caches above cannot change
+ * either, so the walk stops; most words never reach the caches near the root.
+ * </p>
+ */
+class Autocomplete implements VocabListener {
+
+    /**
+     * A ranked word. Instances are immutable and shared by the caches along the word's path.
+     */
+    static final class Suggestion {
+        private final String word;
+        private final byte[] key;
+        private final int score;
+
+        private Suggestion(String word, byte[] key, int score) {
+            this.word = word;
+            this.key = key;
+            this.score = score;
+        }
+
+        /**
+         * Returns the suggested word.
+         *
+         * @return the word
+         */
+        public String getWord() {
+            return word;
+        }
+
+        /**
+         * Returns the number of distinct topics holding the word.
+         *
+         * @return the rank of the word
+         */
+        public int getScore() {
+            return score;
+        }
+
+        /**
+         * Returns whether this suggestion ranks before another one.
+         */
+        boolean isBetterThan(Suggestion other) {
+            if (score != other.score) {
+                return score > other.score;
+            }
+            return WordOrder.compare(key, word, other.key, other.word) < 0;
+        }
+    }
+
+    private static final class TrieNode {
+        // the children and the letters leading to them, side by side; a node has few, so a scan finds one
+        char[] letters = NO_LETTERS;
+        TrieNode[] children = NO_CHILDREN;
+        // the word ending at this node, or null
+        Suggestion terminal;
+        // the topics holding the word ending here, and how many copies of it each one holds
+        Vocab[] topics = NO_TOPICS;
+        int[] copies;
+        Suggestion[] top = NO_SUGGESTIONS;
+
+        TrieNode child(char letter) {
+            for (int i = 0; i < letters.length; i++) {
+                if (letters[i] == letter) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void addChild(char letter, TrieNode child) {
+            letters = Arrays.copyOf(letters, letters.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            letters[letters.length - 1] = letter;
+            children[children.length - 1] = child;
+        }
+
+        void removeChild(char letter) {
+            int last = letters.length - 1;
+            for (int i = 0; i <= last; i++) {
+                if (letters[i] == letter) {
+                    letters[i] = letters[last];
+                    children[i] = children[last];
+                    letters = Arrays.copyOf(letters, last);
+                    children = Arrays.copyOf(children, last);
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final char[] NO_LETTERS = new char[0];
+    private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+    private static final Suggestion[] NO_SUGGESTIONS = new Suggestion[0];
+    private static final Vocab[] NO_TOPICS = new Vocab[0];
+
+    private final int capacity;
+    private final TrieNode root = new TrieNode();
+
+    /**
+     * Constructs an empty autocomplete index.
+     *
+     * @param capacity the largest number of suggestions a query can return
+     */
+    public Autocomplete(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the best ranked words starting with a prefix, best first.
+     *
+     * @param prefix the text typed so far; matching is case insensitive since words are stored in lower case
+     * @param limit the number of suggestions wanted, at most the capacity of the index
+     * @return up to {@code limit} suggestions
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        TrieNode node = root;
+        String text = prefix.toLowerCase();
+        for (int i = 0; i < text.length() && node != null; i++) {
+            node = node.child(text.charAt(i));
+        }
+        ArrayList<Suggestion> result = new ArrayList<>();
+        if (node == null) {
+            return result;
+        }
+        for (int i = 0; i < node.top.length && i < limit; i++) {
+            result.add(node.top[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public void topicAdded(int index, Vocab vocab) {
+        for (String word : vocab.getWords()) {
+            wordAdded(vocab, word);
+        }
+    }
+
+    @Override
+    public void topicRemoved(int index, Vocab vocab) {
+        for (String word : vocab.getWords()) {
+            wordDeleted(vocab, word);
+        }
+    }
+
+    @Override
+    public void wordAdded(Vocab vocab, String word) {
+        update(vocab, word, true);
+    }
+
+    @Override
+    public void wordDeleted(Vocab vocab, String word) {
+        update(vocab, word, false);
+    }
+
+    /**
+     * Counts a copy of a word in a topic in or out, and when that changes the number of topics holding the
+     * word, brings the caches on its path up to date, from the word up to the root.
+     */
+    private void update(Vocab vocab, String word, boolean added) {
+        TrieNode[] path = new TrieNode[word.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < word.length(); i++) {
+            TrieNode child = path[i].child(word.charAt(i));
+            if (child == null) {
+                if (!added) {
+                    return;
+                }
+                child = new TrieNode();
+                path[i].addChild(word.charAt(i), child);
+            }
+            path[i + 1] = child;
+        }
+
+        TrieNode end = path[word.length()];
+        if (!count(end, vocab, added)) {
+            return;
+        }
+        Suggestion old = end.terminal;
+        if (end.topics.length == 0) {
+            end.terminal = null;
+        } else {
+            byte[] key = old == null ? WordOrder.key(word) : old.key;
+            end.terminal = new Suggestion(word, key, end.topics.length);
+        }
+
+        for (int i = word.length(); i >= 0; i--) {
+            TrieNode node = path[i];
+            if (i > 0 && node.terminal == null && node.children.length == 0) {
+                // nothing is left below this node
+                path[i - 1].removeChild(word.charAt(i - 1));
+                continue;
+            }
+            if (!refresh(node, old, end.terminal)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Counts a copy of the word ending at a node in or out of a topic.
+     *
+     * @return whether the number of topics holding the word changed
+     */
+    private static boolean count(TrieNode node, Vocab vocab, boolean added) {
+        int t = 0;
+        while (t < node.topics.length && node.topics[t] != vocab) {
+            t++;
+        }
+        if (t < node.topics.length) {
+            node.copies[t] += added ? 1 : -1;
+            if (node.copies[t] > 0) {
+                return false;
+            }
+            // the last copy in this topic is gone
+            int last = node.topics.length - 1;
+            node.topics[t] = node.topics[last];
+            node.copies[t] = node.copies[last];
+            node.topics = last == 0 ? NO_TOPICS : Arrays.copyOf(node.topics, last);
+            node.copies = last == 0 ? null : Arrays.copyOf(node.copies, last);
+            return true;
+        }
+        if (!added) {
+            return false;
+        }
+        int size = node.topics.length;
+        node.topics = Arrays.copyOf(node.topics, size + 1);
+        node.copies = node.copies == null ? new int[1] : Arrays.copyOf(node.copies, size + 1);
+        node.topics[size] = vocab;
+        node.copies[size] = 1;
+        return true;
+    }
+
+    /**
+     * Updates a node's cache after a word below it changed from one suggestion to another.
+     *
+     * @param node a node on the word's path whose children's caches are already up to date
+     * @param old the word's suggestion before the change, or {@code null} if it was not ranked
+     * @param now the word's suggestion after the change, or {@code null} if it is gone
+     * @return whether the cache changed, so the node's parent needs updating too
+     */
+    private boolean refresh(TrieNode node, Suggestion old, Suggestion now) {
+        Suggestion[] top = node.top;
+        int position = 0;
+        while (position < top.length && top[position] != old) {
+            position++;
+        }
+        if (position < top.length) {
+            if (now == null || old.isBetterThan(now)) {
+                // the word may drop out, and the one replacing it is only known to the children
+                node.top = best(node);
+                return true;
+            }
+            // the word rose, move it towards the front
+            Suggestion[] updated = top.clone();
+            while (position > 0 && now.isBetterThan(updated[position - 1])) {
+                updated[position] = updated[position - 1];
+                position--;
+            }
+            updated[position] = now;
+            node.top = updated;
+            return true;
+        }
+        if (now == null || (top.length == capacity && !now.isBetterThan(top[capacity - 1]))) {
+            return false;
+        }
+        // the word enters the cache, pushing out the last one if it is full
+        Suggestion[] updated = Arrays.copyOf(top, Math.min(top.length + 1, capacity));
+        position = Math.min(top.length, capacity - 1);
+        while (position > 0 && now.isBetterThan(updated[position - 1])) {
+            updated[position] = updated[position - 1];
+            position--;
+        }
+        updated[position] = now;
+        node.top = updated;
+        return true;
+    }
+
+    /**
+     * Merges a node's own word and its children's caches into the best {@code capacity} suggestions.
+     */
+    private Suggestion[] best(TrieNode node) {
+        ArrayList<Suggestion> best = new ArrayList<>(capacity + 1);
+        if (node.terminal != null) {
+            best.add(node.terminal);
+        }
+        for (TrieNode child : node.children) {
+            for (Suggestion candidate : child.top) {
+                if (best.size() == capacity && !candidate.isBetterThan(best.get(capacity - 1))) {
+                    // the child's cache is sorted, the rest of it cannot do better
+                    break;
+                }
+                int position = best.size();
+                while (position > 0 && candidate.isBetterThan(best.get(position - 1))) {
+                    position--;
+                }
+                best.add(position, candidate);
+                if (best.size() > capacity) {
+                    best.remove(capacity);
+                }
+            }
+        }
+        return best.toArray(NO_SUGGESTIONS);
+    }
+}
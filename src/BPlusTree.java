@@ -0,0 +1,333 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.BiPredicate;
+
+/**
+ * A B+tree mapping byte string keys to byte string values, stored in the pages of a {@link PageStore}.
+ * <p>
+ * Keys are ordered by unsigned byte comparison, which for UTF-8 text is the same as code point order.
+ * Values live only in the leaves, and the leaves are chained left to right so range scans run sequentially
+ * through the file. Nodes split when their encoded form no longer fits in a page. Deletion removes keys
+ * from their leaf without merging underfull nodes; empty leaves stay in the chain and are skipped by scans.
+ * The root page number is kept in a header slot of the page store, so several trees can share one file.
+ * </p>
+ */
+class BPlusTree {
+
+    /**
+     * The longest key or value that can be stored, chosen so a split always leaves two halves that fit a page.
+     */
+    static final int MAX_ENTRY_SIZE = PageStore.PAGE_SIZE / 8;
+
+    /**
+     * One tree node, as it is kept in the buffer pool and encoded in a page.
+     */
+    static class Node {
+        int pageId;
+        boolean dirty;
+        boolean leaf;
+        ArrayList<byte[]> keys = new ArrayList<>();
+        // leaves only: one value per key
+        ArrayList<byte[]> values;
+        // internal nodes only: one more child than keys, child i holds keys below keys[i]
+        ArrayList<Integer> children;
+        // leaves only: page of the next leaf, or -1 for the last leaf
+        int next = -1;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+            if (leaf) {
+                values = new ArrayList<>();
+            } else {
+                children = new ArrayList<>();
+            }
+        }
+
+        /**
+         * Returns the number of bytes this node needs in a page.
+         */
+        int encodedSize() {
+            int size = 1 + 2 + 4;
+            for (int i = 0; i < keys.size(); i++) {
+                size += 2 + keys.get(i).length;
+                size += leaf ? 2 + values.get(i).length : 4;
+            }
+            return leaf ? size : size + 4;
+        }
+
+        void writeTo(ByteBuffer buffer) {
+            buffer.put((byte) (leaf ? 0 : 1));
+            buffer.putShort((short) keys.size());
+            buffer.putInt(next);
+            for (int i = 0; i < keys.size(); i++) {
+                putBytes(buffer, keys.get(i));
+                if (leaf) {
+                    putBytes(buffer, values.get(i));
+                }
+            }
+            if (!leaf) {
+                for (int child : children) {
+                    buffer.putInt(child);
+                }
+            }
+        }
+
+        static Node readFrom(ByteBuffer buffer) {
+            Node node = new Node(buffer.get() == 0);
+            int count = buffer.getShort();
+            node.next = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                node.keys.add(getBytes(buffer));
+                if (node.leaf) {
+                    node.values.add(getBytes(buffer));
+                }
+            }
+            if (!node.leaf) {
+                for (int i = 0; i <= count; i++) {
+                    node.children.add(buffer.getInt());
+                }
+            }
+            return node;
+        }
+
+        private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+
+        private static byte[] getBytes(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getShort()];
+            buffer.get(bytes);
+            return bytes;
+        }
+    }
+
+    /**
+     * The result of splitting a node: the separator to insert in the parent and the new right sibling.
+     */
+    private static class Split {
+        byte[] separator;
+        int right;
+
+        Split(byte[] separator, int right) {
+            this.separator = separator;
+            this.right = right;
+        }
+    }
+
+    private final PageStore store;
+    private final int rootSlot;
+    // set by insert() to report whether the key was new
+    private boolean inserted;
+
+    /**
+     * Opens the tree whose root page number is kept in the given header slot, creating an empty tree
+     * if the slot is not set yet.
+     *
+     * @param store the page store holding the tree
+     * @param rootSlot the header slot holding the root page number
+     */
+    public BPlusTree(PageStore store, int rootSlot) {
+        this.store = store;
+        this.rootSlot = rootSlot;
+        if (store.getSlot(rootSlot) == 0) {
+            store.setSlot(rootSlot, store.allocate(new Node(true)).pageId);
+        }
+    }
+
+    /**
+     * Returns the value stored for a key.
+     *
+     * @param key the key to look up
+     * @return the value, or {@code null} if the key is not in the tree
+     */
+    public byte[] get(byte[] key) {
+        Node leaf = findLeaf(key);
+        int i = search(leaf.keys, key);
+        return i >= 0 ? leaf.values.get(i) : null;
+    }
+
+    /**
+     * Stores a value for a key, replacing any previous value.
+     *
+     * @param key the key
+     * @param value the value
+     * @return {@code true} if the key was not in the tree before
+     */
+    public boolean put(byte[] key, byte[] value) {
+        if (key.length > MAX_ENTRY_SIZE || value.length > MAX_ENTRY_SIZE) {
+            throw new IllegalArgumentException("Entries are limited to " + MAX_ENTRY_SIZE + " bytes");
+        }
+        int rootId = store.getSlot(rootSlot);
+        Split split = insert(rootId, key, value);
+        if (split != null) {
+            Node root = new Node(false);
+            root.keys.add(split.separator);
+            root.children.add(rootId);
+            root.children.add(split.right);
+            store.setSlot(rootSlot, store.allocate(root).pageId);
+        }
+        return inserted;
+    }
+
+    /**
+     * Removes a key and its value.
+     *
+     * @param key the key to remove
+     * @return {@code true} if the key was in the tree
+     */
+    public boolean remove(byte[] key) {
+        Node leaf = findLeaf(key);
+        int i = search(leaf.keys, key);
+        if (i < 0) {
+            return false;
+        }
+        leaf.keys.remove(i);
+        leaf.values.remove(i);
+        store.put(leaf);
+        return true;
+    }
+
+    /**
+     * Visits the entries with keys greater than or equal to {@code from} in ascending key order,
+     * until the visitor returns {@code false} or the last entry has been visited.
+     *
+     * @param from the smallest key to visit
+     * @param visitor receives each key and value, and returns whether to continue
+     */
+    public void scan(byte[] from, BiPredicate<byte[], byte[]> visitor) {
+        Node leaf = findLeaf(from);
+        int i = search(leaf.keys, from);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        while (true) {
+            // the visitor may touch the tree, so read what is needed before calling it
+            int next = leaf.next;
+            ArrayList<byte[]> keys = new ArrayList<>(leaf.keys.subList(i, leaf.keys.size()));
+            ArrayList<byte[]> values = new ArrayList<>(leaf.values.subList(i, leaf.values.size()));
+            for (int j = 0; j < keys.size(); j++) {
+                if (!visitor.test(keys.get(j), values.get(j))) {
+                    return;
+                }
+            }
+            if (next < 0) {
+                return;
+            }
+            leaf = store.get(next);
+            i = 0;
+        }
+    }
+
+    private Node findLeaf(byte[] key) {
+        Node node = store.get(store.getSlot(rootSlot));
+        while (!node.leaf) {
+            node = store.get(node.children.get(childIndex(node, key)));
+        }
+        return node;
+    }
+
+    private Split insert(int pageId, byte[] key, byte[] value) {
+        Node node = store.get(pageId);
+        if (node.leaf) {
+            int i = search(node.keys, key);
+            inserted = i < 0;
+            if (inserted) {
+                node.keys.add(-i - 1, key);
+                node.values.add(-i - 1, value);
+            } else {
+                node.values.set(i, value);
+            }
+            store.put(node);
+            return node.encodedSize() > PageStore.PAGE_SIZE ? splitLeaf(node) : null;
+        }
+
+        int index = childIndex(node, key);
+        Split split = insert(node.children.get(index), key, value);
+        if (split == null) {
+            return null;
+        }
+        // the child may have been evicted while we were below it, so fetch this node again
+        node = store.get(pageId);
+        node.keys.add(index, split.separator);
+        node.children.add(index + 1, split.right);
+        store.put(node);
+        return node.encodedSize() > PageStore.PAGE_SIZE ? splitInternal(node) : null;
+    }
+
+    private Split splitLeaf(Node node) {
+        int mid = splitPoint(node);
+        Node right = new Node(true);
+        moveTail(node.keys, right.keys, mid);
+        moveTail(node.values, right.values, mid);
+        store.allocate(right);
+        right.next = node.next;
+        node.next = right.pageId;
+        store.put(node);
+        store.put(right);
+        return new Split(right.keys.get(0), right.pageId);
+    }
+
+    private Split splitInternal(Node node) {
+        int mid = splitPoint(node);
+        Node right = new Node(false);
+        byte[] separator = node.keys.get(mid);
+        moveTail(node.keys, right.keys, mid + 1);
+        moveTail(node.children, right.children, mid + 1);
+        node.keys.remove(mid);
+        store.allocate(right);
+        store.put(node);
+        return new Split(separator, right.pageId);
+    }
+
+    /**
+     * Returns the index of the first key that belongs to the right half, so both halves hold about the same
+     * number of bytes even when key lengths vary.
+     */
+    private static int splitPoint(Node node) {
+        int half = node.encodedSize() / 2;
+        int size = 0;
+        for (int i = 0; i < node.keys.size() - 1; i++) {
+            size += 2 + node.keys.get(i).length + (node.leaf ? 2 + node.values.get(i).length : 4);
+            if (size >= half) {
+                return Math.max(i, 1);
+            }
+        }
+        return node.keys.size() / 2;
+    }
+
+    private static <T> void moveTail(ArrayList<T> from, ArrayList<T> to, int start) {
+        to.addAll(from.subList(start, from.size()));
+        from.subList(start, from.size()).clear();
+    }
+
+    /**
+     * Returns the child of an internal node that covers the given key.
+     */
+    private static int childIndex(Node node, byte[] key) {
+        int i = search(node.keys, key);
+        // keys[i] is the smallest key of child i + 1
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    /**
+     * Binary search with the same contract as {@link java.util.Collections#binarySearch(java.util.List, Object)}.
+     */
+    private static int search(ArrayList<byte[]> keys, byte[] key) {
+        int low = 0;
+        int high = keys.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Arrays.compareUnsigned(keys.get(mid), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * A Bloom filter over words: a compact bit set that answers "definitely not present" or "possibly present".
+ * <p>
+ * Each {@link Vocab} keeps one so a search can skip topics that cannot hold the word without walking their
+ * {@link WordList}. The filter is sized for an expected number of words and a target false-positive rate,
+ * which is configured once for all topics with {@link #setTargetFalsePositiveRate(double)}. Bits can only be
+ * set, never cleared, so after words are deleted the owner rebuilds the filter.
+ * </p>
+ */
+class BloomFilter {
+
+    private static volatile double targetFalsePositiveRate = 0.01;
+
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+    private final int capacity;
+    private int size;
+
+    /**
+     * Constructs an empty filter sized for the given number of words at the target false-positive rate.
+     *
+     * @param capacity the number of words the filter is sized for
+     */
+    public BloomFilter(int capacity) {
+        this.capacity = Math.max(capacity, 1);
+        double p = targetFalsePositiveRate;
+        // the optimal size and number of hash functions for n words at rate p
+        long m = (long) Math.ceil(-this.capacity * Math.log(p) / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.max(64, Math.min(m, Integer.MAX_VALUE - 63));
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / this.capacity * Math.log(2)));
+        this.bits = new long[(bitCount + 63) / 64];
+    }
+
+    /**
+     * Returns the false-positive rate new filters are sized for.
+     *
+     * @return the target rate
+     */
+    static double getTargetFalsePositiveRate() {
+        return targetFalsePositiveRate;
+    }
+
+    /**
+     * Sets the false-positive rate new filters are sized for. Existing filters keep their size until rebuilt.
+     *
+     * @param rate a rate strictly between 0 and 1
+     */
+    static void setTargetFalsePositiveRate(double rate) {
+        if (!(rate > 0 && rate < 1)) {
+            throw new IllegalArgumentException("The false-positive rate must be between 0 and 1");
+        }
+        targetFalsePositiveRate = rate;
+    }
+
+    /**
+     * Adds a word to the filter.
+     *
+     * @param word the word
+     */
+    public void add(String word) {
+        long hash = hash(word);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+        size++;
+    }
+
+    /**
+     * Checks whether a word may have been added.
+     *
+     * @param word the word
+     * @return {@code false} if the word was definitely never added
+     */
+    public boolean mightContain(String word) {
+        long hash = hash(word);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether more words have been added than the filter was sized for.
+     *
+     * @return {@code true} if the filter should be rebuilt larger
+     */
+    public boolean isOverloaded() {
+        return size > capacity;
+    }
+
+    /**
+     * Estimates the current false-positive rate from the number of words added.
+     *
+     * @return the probability that an absent word is reported as possibly present
+     */
+    public double estimatedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * size / bitCount), hashCount);
+    }
+
+    /**
+     * Returns the memory used by the bit set, in bytes.
+     *
+     * @return the size of the bit set
+     */
+    public int sizeInBytes() {
+        return bits.length * 8;
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the characters, whose two halves serve as the two base hashes.
+     */
+    private static long hash(String word) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash ^= word.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // FNV mixes the last characters poorly into the high bits, finish with a mixing step
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
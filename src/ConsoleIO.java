@@ -0,0 +1,143 @@
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A buffered, line oriented console used by the {@link Driver} menus in place of {@link java.util.Scanner}
+ * and the unbuffered {@code System.out}.
+ * <p>
+ * Input is read in large blocks and handed out one line at a time, so every prompt consumes exactly one line
+ * and the menus can no longer get out of step the way mixed {@code nextInt()}, {@code next()} and
+ * {@code nextLine()} calls did. Output is collected in a buffer and written in bulk. It is flushed explicitly
+ * with {@link #flush()}, and automatically just before the console has to wait for more input, so prompts are
+ * always visible in an interactive session while piped sessions only flush once per input block.
+ * </p>
+ */
+class ConsoleIO {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    // bytes of the line being read, kept between calls to avoid reallocating for every line
+    private byte[] line = new byte[256];
+
+    private final PrintStream out;
+
+    /**
+     * Constructs a console reading from the given input and writing to the given output.
+     *
+     * @param in the stream commands are read from
+     * @param out the stream all output is eventually written to
+     */
+    public ConsoleIO(InputStream in, OutputStream out) {
+        this.in = in;
+        this.out = new PrintStream(new BufferedOutputStream(out, BUFFER_SIZE), false, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the buffered output stream of this console. Anything printed to it stays in the buffer until
+     * the next flush point.
+     *
+     * @return the buffered output stream
+     */
+    public PrintStream getOut() {
+        return out;
+    }
+
+    /**
+     * Writes any buffered output to the underlying stream.
+     */
+    public void flush() {
+        out.flush();
+    }
+
+    /**
+     * Reads the next line of input without its line terminator.
+     *
+     * @return the next line, or an empty string once the input is exhausted
+     */
+    public String nextLine() {
+        int length = 0;
+        while (true) {
+            if (position == limit && !fill()) {
+                break;
+            }
+            byte b = buffer[position++];
+            if (b == '\n') {
+                break;
+            }
+            if (length == line.length) {
+                line = Arrays.copyOf(line, length * 2);
+            }
+            line[length++] = b;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the next line of input as a whole number.
+     *
+     * @return the number on the line, {@code -1} if the line is not a number, or {@code 0} (the exit choice
+     *         of every menu) once the input is exhausted
+     */
+    public int nextInt() {
+        String text = nextLine().trim();
+        if (text.isEmpty() && isEndOfInput()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns whether all input has been consumed.
+     *
+     * @return {@code true} if no more lines can be read
+     */
+    public boolean isEndOfInput() {
+        return position == limit && !fill();
+    }
+
+    /**
+     * Refills the input buffer, flushing pending output first since the read may block waiting for the user.
+     *
+     * @return {@code true} if at least one byte was read
+     */
+    private boolean fill() {
+        if (endOfInput) {
+            return false;
+        }
+        flush();
+        try {
+            int read;
+            do {
+                read = in.read(buffer, 0, buffer.length);
+            } while (read == 0);
+            if (read < 0) {
+                endOfInput = true;
+                return false;
+            }
+            position = 0;
+            limit = read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
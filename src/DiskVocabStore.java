@@ -0,0 +1,414 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * A persistent alternative to {@link VocabList} and its {@link WordList}s that keeps the vocabulary in a single
+ * page file and answers queries without loading it into memory.
+ * <p>
+ * Two {@link BPlusTree}s share one {@link PageStore}. The primary tree is keyed by (topic, word), so the words
+ * of a topic are stored next to each other in sorted order and browsing or prefix scans read consecutive
+ * leaves. Each topic also has a marker entry in the primary tree holding its rank. The secondary tree is keyed
+ * by (rank, topic) and gives the topics in list order. Ranks are spaced apart so a topic can be inserted
+ * between two others without touching the rest; they are renumbered only when a gap runs out.
+ * </p>
+ * <p>
+ * Topic names are matched ignoring case, as in {@link VocabList#containsTopic(String)}, and keep the case they
+ * were added with. {@link #importFrom(VocabList)} and {@link #exportTo(VocabList)} move a vocabulary between
+ * the store and an in-memory list. Registered as a {@link VocabListener} of a list, the store applies every
+ * change of the list to its pages, which is how {@link Driver} runs on it when started with {@code --store}.
+ * </p>
+ */
+class DiskVocabStore implements Closeable, VocabListener {
+
+    private static final int PRIMARY_ROOT = 0;
+    private static final int ORDER_ROOT = 1;
+    private static final int TOPIC_COUNT = 2;
+
+    private static final long RANK_GAP = 1L << 20;
+    private static final byte[] EMPTY = new byte[0];
+    // put between the marker and the word in word keys, so no word key equals a marker, not even for ""
+    private static final byte WORD_TAG = 1;
+
+    private final PageStore store;
+    private final BPlusTree primary;
+    private final BPlusTree order;
+    // whether anything changed since the last flush
+    private boolean changed;
+
+    /**
+     * Opens the store kept in the given file, creating an empty one if the file does not exist.
+     *
+     * @param fileName the page file
+     * @param cachePages the number of pages the buffer pool keeps in memory
+     * @throws IOException if the file cannot be opened
+     */
+    public DiskVocabStore(String fileName, int cachePages) throws IOException {
+        store = new PageStore(fileName, cachePages);
+        primary = new BPlusTree(store, PRIMARY_ROOT);
+        order = new BPlusTree(store, ORDER_ROOT);
+    }
+
+    /**
+     * Returns the number of topics in the store.
+     *
+     * @return the number of topics
+     */
+    public int size() {
+        return store.getSlot(TOPIC_COUNT);
+    }
+
+    /**
+     * Returns the topics in list order.
+     *
+     * @return the topic names
+     */
+    public ArrayList<String> topics() {
+        ArrayList<String> topics = new ArrayList<>();
+        order.scan(EMPTY, (key, value) -> {
+            topics.add(new String(key, 8, key.length - 8, StandardCharsets.UTF_8));
+            return true;
+        });
+        return topics;
+    }
+
+    /**
+     * Checks whether the store holds a topic.
+     *
+     * @param topic the topic name, matched ignoring case
+     * @return {@code true} if the topic exists
+     */
+    public boolean containsTopic(String topic) {
+        return primary.get(topicKey(topic)) != null;
+    }
+
+    /**
+     * Adds a new topic after all existing ones.
+     *
+     * @param topic the topic name
+     * @return {@code false} if a topic of that name, ignoring case, already exists
+     */
+    public boolean addTopic(String topic) {
+        return addTopicAtIndex(size(), topic);
+    }
+
+    /**
+     * Adds a new topic at the given position in the topic order.
+     *
+     * @param index the position of the new topic, from 0 to {@link #size()}
+     * @param topic the topic name
+     * @return {@code false} if a topic of that name, ignoring case, already exists
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public boolean addTopicAtIndex(int index, String topic) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index is out of bounds");
+        }
+        if (containsTopic(topic)) {
+            return false;
+        }
+        long[] ranks = ranks();
+        long lower = index > 0 ? ranks[index - 1] : 0;
+        long upper = index < ranks.length ? ranks[index] : lower + 2 * RANK_GAP;
+        if (upper - lower < 2) {
+            renumber();
+            ranks = ranks();
+            lower = index > 0 ? ranks[index - 1] : 0;
+            upper = index < ranks.length ? ranks[index] : lower + 2 * RANK_GAP;
+        }
+        long rank = lower + (upper - lower) / 2;
+
+        primary.put(topicKey(topic), markerValue(rank, topic));
+        order.put(orderKey(rank, topic), EMPTY);
+        store.setSlot(TOPIC_COUNT, size() + 1);
+        changed = true;
+        return true;
+    }
+
+    /**
+     * Removes a topic and all of its words.
+     *
+     * @param topic the topic name
+     * @return {@code false} if the topic does not exist
+     */
+    public boolean removeTopic(String topic) {
+        byte[] marker = topicKey(topic);
+        byte[] stored = primary.get(marker);
+        if (stored == null) {
+            return false;
+        }
+        ArrayList<byte[]> keys = new ArrayList<>();
+        primary.scan(marker, (key, value) -> {
+            if (!startsWith(key, marker)) {
+                return false;
+            }
+            keys.add(key);
+            return true;
+        });
+        for (byte[] key : keys) {
+            primary.remove(key);
+        }
+        // the order index holds the name as it was added, which may differ in case from the one given
+        long rank = ByteBuffer.wrap(stored).getLong();
+        order.remove(orderKey(rank, new String(stored, 8, stored.length - 8, StandardCharsets.UTF_8)));
+        store.setSlot(TOPIC_COUNT, size() - 1);
+        changed = true;
+        return true;
+    }
+
+    /**
+     * Renames a topic, keeping its position and its words.
+     *
+     * @param oldTopic the current topic name
+     * @param newTopic the new topic name
+     * @return {@code false} if the topic does not exist or another topic already has the new name, ignoring case
+     */
+    public boolean renameTopic(String oldTopic, String newTopic) {
+        if (!containsTopic(oldTopic)
+                || containsTopic(newTopic) && !oldTopic.equalsIgnoreCase(newTopic)) {
+            return false;
+        }
+        int index = 0;
+        for (String topic : topics()) {
+            if (topic.equalsIgnoreCase(oldTopic)) {
+                break;
+            }
+            index++;
+        }
+        ArrayList<String> words = new ArrayList<>();
+        forEachWord(oldTopic, words::add);
+        removeTopic(oldTopic);
+        addTopicAtIndex(index, newTopic);
+        for (String word : words) {
+            primary.put(wordKey(newTopic, word), EMPTY);
+        }
+        return true;
+    }
+
+    /**
+     * Adds a word to a topic. As in {@link WordList#add(String)} the word is stored in lower case.
+     *
+     * @param topic the topic name
+     * @param word the word to add
+     * @return {@code true} if the word was added, {@code false} if it was already there or the topic does not exist
+     */
+    public boolean add(String topic, String word) {
+        if (!containsTopic(topic) || !primary.put(wordKey(topic, word.toLowerCase()), EMPTY)) {
+            return false;
+        }
+        changed = true;
+        return true;
+    }
+
+    /**
+     * Checks whether a topic holds a word.
+     *
+     * @param topic the topic name
+     * @param word the word to look for
+     * @return {@code true} if the word is stored under the topic
+     */
+    public boolean contains(String topic, String word) {
+        return primary.get(wordKey(topic, word)) != null;
+    }
+
+    /**
+     * Removes a word from a topic.
+     *
+     * @param topic the topic name
+     * @param word the word to remove
+     * @return {@code true} if the word was removed
+     */
+    public boolean delete(String topic, String word) {
+        if (!primary.remove(wordKey(topic, word))) {
+            return false;
+        }
+        changed = true;
+        return true;
+    }
+
+    /**
+     * Visits the words of a topic in sorted order.
+     *
+     * @param topic the topic name
+     * @param action receives each word
+     */
+    public void forEachWord(String topic, Consumer<String> action) {
+        forEachWordStartingWith(topic, "", action);
+    }
+
+    /**
+     * Visits the words of a topic that start with a prefix, in sorted order. Only the leaves holding
+     * matching words are read.
+     *
+     * @param topic the topic name
+     * @param prefix the prefix the words must start with
+     * @param action receives each matching word
+     */
+    public void forEachWordStartingWith(String topic, String prefix, Consumer<String> action) {
+        int start = topicKey(topic).length + 1;
+        byte[] from = wordKey(topic, prefix);
+        primary.scan(from, (key, value) -> {
+            if (!startsWith(key, from)) {
+                return false;
+            }
+            action.accept(new String(key, start, key.length - start, StandardCharsets.UTF_8));
+            return true;
+        });
+    }
+
+    /**
+     * Copies every topic and word of an in-memory list into the store. Topics that already exist are merged.
+     *
+     * @param vocabList the list to copy
+     */
+    public void importFrom(VocabList vocabList) {
+        for (Vocab vocab : vocabList) {
+            addTopic(vocab.getTopic());
+            for (String word : vocab.getWords()) {
+                add(vocab.getTopic(), word);
+            }
+        }
+    }
+
+    /**
+     * Appends every topic of the store, with its words, to an in-memory list.
+     *
+     * @param vocabList the list to fill
+     */
+    public void exportTo(VocabList vocabList) {
+        for (String topic : topics()) {
+            vocabList.add(topic);
+            ArrayList<String> words = new ArrayList<>();
+            forEachWord(topic, words::add);
+            vocabList.getVocabAtIndex(vocabList.size() - 1).getWords().addAll(words);
+        }
+    }
+
+    @Override
+    public void topicAdded(int index, Vocab vocab) {
+        // topics loaded from the store are reported again on registration and are already here
+        if (!addTopicAtIndex(Math.min(index, size()), vocab.getTopic())) {
+            return;
+        }
+        // a topic put back by undo comes with its words
+        for (String word : vocab.getWords()) {
+            add(vocab.getTopic(), word);
+        }
+    }
+
+    @Override
+    public void topicRemoved(int index, Vocab vocab) {
+        removeTopic(vocab.getTopic());
+    }
+
+    @Override
+    public void topicRenamed(Vocab vocab, String oldTopic) {
+        renameTopic(oldTopic, vocab.getTopic());
+    }
+
+    @Override
+    public void wordAdded(Vocab vocab, String word) {
+        add(vocab.getTopic(), word);
+    }
+
+    @Override
+    public void wordDeleted(Vocab vocab, String word) {
+        // the store keeps one entry per word, which stays while the topic still holds another copy
+        if (!vocab.getWords().contains(word)) {
+            delete(vocab.getTopic(), word);
+        }
+    }
+
+    /**
+     * Writes all changes to the file. Does nothing if the store has not changed since the last flush.
+     *
+     * @throws IOException if writing fails
+     */
+    public void flush() throws IOException {
+        if (changed) {
+            store.flush();
+            changed = false;
+        }
+    }
+
+    /**
+     * Writes all changes to the file and closes it.
+     *
+     * @throws IOException if writing or closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    /**
+     * Returns the ranks of all topics in list order.
+     */
+    private long[] ranks() {
+        long[] ranks = new long[size()];
+        int[] i = {0};
+        order.scan(EMPTY, (key, value) -> {
+            ranks[i[0]++] = ByteBuffer.wrap(key).getLong();
+            return true;
+        });
+        return ranks;
+    }
+
+    /**
+     * Spreads the ranks of all topics evenly again, keeping their order.
+     */
+    private void renumber() {
+        ArrayList<String> topics = topics();
+        long[] ranks = ranks();
+        for (int i = 0; i < topics.size(); i++) {
+            order.remove(orderKey(ranks[i], topics.get(i)));
+        }
+        for (int i = 0; i < topics.size(); i++) {
+            long rank = (i + 1) * RANK_GAP;
+            order.put(orderKey(rank, topics.get(i)), EMPTY);
+            primary.put(topicKey(topics.get(i)), markerValue(rank, topics.get(i)));
+        }
+        changed = true;
+    }
+
+    /**
+     * The marker key of a topic: its name in lower case followed by a zero byte. Word keys of the topic extend
+     * it with {@link #WORD_TAG} and the word, so the marker sorts right before the topic's words.
+     */
+    private static byte[] topicKey(String topic) {
+        byte[] name = topic.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+        return Arrays.copyOf(name, name.length + 1);
+    }
+
+    private static byte[] wordKey(String topic, String word) {
+        byte[] marker = topicKey(topic);
+        byte[] text = word.getBytes(StandardCharsets.UTF_8);
+        byte[] key = Arrays.copyOf(marker, marker.length + 1 + text.length);
+        key[marker.length] = WORD_TAG;
+        System.arraycopy(text, 0, key, marker.length + 1, text.length);
+        return key;
+    }
+
+    private static byte[] orderKey(long rank, String topic) {
+        byte[] name = topic.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(8 + name.length).putLong(rank).put(name).array();
+    }
+
+    /**
+     * The value of a topic marker: the topic's rank followed by its name as it was added.
+     */
+    private static byte[] markerValue(long rank, String topic) {
+        byte[] name = topic.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(8 + name.length).putLong(rank).put(name).array();
+    }
+
+    private static boolean startsWith(byte[] key, byte[] prefix) {
+        return key.length >= prefix.length
+                && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length);
+    }
+}
@@ -1,12 +1,19 @@
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Scanner;
-import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * The {@code Driver} class serves as the control center for managing vocabulary topics and words.
@@ -23,18 +30,76 @@ import java.io.FileInputStream;
  * </p>
  */
 public class Driver {
-    private static Scanner scanner = new Scanner(System.in);
+    private static ConsoleIO console = new ConsoleIO(System.in, System.out);
     private static VocabList vocabList = new VocabList();
+    private static SubstringIndex substringIndex = new SubstringIndex();
+    private static SnapshotPublisher snapshots = new SnapshotPublisher();
+    private static UndoHistory history = new UndoHistory(vocabList, 100);
+    private static Autocomplete autocomplete = new Autocomplete(10);
+    private static QuizSampler quizSampler = new QuizSampler();
+    private static Random random = new Random();
+    private static ReviewDeck reviewDeck = new ReviewDeck();
+    private static TopicBitmapIndex topicBitmaps = new TopicBitmapIndex();
+    private static TokenIndex tokenIndex = new TokenIndex();
+    // the directory the topics were last loaded from or saved to, one file per topic
+    private static ShardedStore shardedStore = null;
+    // the file being watched for changes, or null
+    private static VocabWatcher watcher = null;
+    // the words of all topics in flat read-only arrays while the topics are frozen, or null when editing is allowed
+    private static FrozenVocab frozen = null;
+    // saves changes in the background while autosave is on, or null
+    private static AutoSaver autoSaver = null;
+    // whether scans across topics run on all cores, set with --parallel
+    private static boolean parallel = false;
+    // the page file every change is written through to, set with --store, or null
+    private static DiskVocabStore diskStore = null;
+    
+    // pages of the --store file kept in memory, 4 MiB
+    private static final int STORE_CACHE_PAGES = 1024;
+
+    // outcomes of looking a word up in one topic
+    private static final int SKIPPED = 0;
+    private static final int MISSED = 1;
+    private static final int FOUND = 2;
+
+    static {
+        vocabList.addListener(substringIndex);
+        vocabList.addListener(snapshots);
+        vocabList.addListener(autocomplete);
+        vocabList.addListener(quizSampler);
+        vocabList.addListener(reviewDeck);
+        vocabList.addListener(topicBitmaps);
+        vocabList.addListener(tokenIndex);
+    }
 
     /**
      * Main method to run the Vocabulary Control Center program.
      * It provides a menu-driven interface for users to perform various operations.
      *
-     * @param args command-line arguments (not used)
+     * @param args command-line arguments: {@code --locale=<language tag>} sorts words by the rules of that locale,
+     *             {@code --bloom-fpr=<rate>} sets the false-positive rate the per-topic Bloom filters are sized for,
+     *             {@code --parallel} runs searches across topics on all cores,
+     *             {@code --store=<file>} loads the topics from a page file and writes every change back to it
      */
     public static void main(String[] args) {
+    	// route everything printed, including by the lists themselves, through the buffered console
+    	System.setOut(console.getOut());
+    	
+    	for (String arg : args) {
+    		if (arg.startsWith("--locale=")) {
+    			// must happen before the first word is added, lists are not re-sorted
+    			WordOrder.setLocale(Locale.forLanguageTag(arg.substring("--locale=".length())));
+    		} else if (arg.startsWith("--bloom-fpr=")) {
+    			BloomFilter.setTargetFalsePositiveRate(Double.parseDouble(arg.substring("--bloom-fpr=".length())));
+    		} else if (arg.equals("--parallel")) {
+    			parallel = true;
+    		} else if (arg.startsWith("--store=")) {
+    			openDiskStore(arg.substring("--store=".length()));
+    		}
+    	}
     	
         boolean running = true;
+        String error;
         while (running) {
             System.out.println("------------------------------------------------------");
             System.out.println("  	     Vocabulary Control Center");
@@ -48,11 +113,34 @@ public class Driver {
             System.out.println(" 7  load from a file");
             System.out.println(" 8  show all words starting with a given letter");
             System.out.println(" 9  save to file");
+            System.out.println("10  show all words containing a given text");
+            System.out.println("11  undo the last change");
+            System.out.println("12  redo the last undone change");
+            System.out.println("13  suggest completions for a prefix");
+            System.out.println("14  compare two files");
+            System.out.println("15  apply a patch file");
+            System.out.println("16  quiz: guess the topic of random words");
+            System.out.println("17  review the words that are due");
+            System.out.println("18  " + (watcher == null ? "watch a file and reload it when it changes" : "stop watching " + watcher.getFile().getFileName()));
+            System.out.println("19  show how much memory each topic uses");
+            System.out.println("20  find words by topics, e.g. (Food OR Drinks) AND NOT Fruits");
+            System.out.println("21  " + (frozen == null ? "freeze the topics for fast read-only use" : "thaw the topics to edit them again"));
+            System.out.println("22  " + (autoSaver == null ? "turn on autosave" : "turn off autosave to " + autoSaver.getFile().getName()));
             System.out.println(" 0  Exit");
             System.out.println("-----------------------------------------------------");
             System.out.print("Enter Your Choice: ");
 
-            int choice = scanner.nextInt();
+            int choice = console.nextInt();
+            applyReloads();
+            if (autoSaver != null && (error = autoSaver.takeError()) != null) {
+            	System.out.println("Autosave failed, it will be retried: " + error);
+            }
+            if (frozen != null && isEdit(choice)) {
+            	System.out.println("The topics are frozen. Choose 21 to thaw them before making changes.");
+            	continue;
+            }
+            // everything one menu option changes is undone as a single step
+            history.beginStep();
             switch (choice) {
                 case 1:
                     browseATopic(); 
@@ -81,18 +169,93 @@ public class Driver {
                 case 9:
                     saveToFile();
                     break;
+                case 10:
+                    showWordsContaining();
+                    break;
+                case 11:
+                    undo();
+                    break;
+                case 12:
+                    redo();
+                    break;
+                case 13:
+                    suggestCompletions();
+                    break;
+                case 14:
+                    compareFiles();
+                    break;
+                case 15:
+                    applyPatch();
+                    break;
+                case 16:
+                    quiz();
+                    break;
+                case 17:
+                    reviewDueWords();
+                    break;
+                case 18:
+                    toggleWatch();
+                    break;
+                case 19:
+                    showMemoryUse();
+                    break;
+                case 20:
+                    queryTopics();
+                    break;
+                case 21:
+                    toggleFreeze();
+                    break;
+                case 22:
+                    toggleAutoSave();
+                    break;
                 case 0:
+                	if (autoSaver != null) {
+                		// write what the background saver has not written yet
+                		toggleAutoSave();
+                	}
                 	System.out.println("Bye. Thank you for using our program!");
                     running = false;
-                    scanner.close();
-                    System.exit(0);
                     break;
                 default:
-                    System.out.println("Invalid choice. Please enter a number between 0 and 9.");
+                    System.out.println("Invalid choice. Please enter a number between 0 and 22.");
                     
             }
+            history.endStep();
+            if (diskStore != null) {
+            	try {
+            		// the whole step reaches the file at once, and only if it changed anything
+            		diskStore.flush();
+            	} catch (IOException e) {
+            		System.out.println("I/O error: could not write the store: " + e.getMessage());
+            	}
+            }
         }
-        scanner.close();
+        if (diskStore != null) {
+        	try {
+        		diskStore.close();
+        	} catch (IOException e) {
+        		System.out.println("I/O error: could not close the store: " + e.getMessage());
+        	}
+        }
+        console.flush();
+    }
+    
+    /**
+     * Opens the page file given with {@code --store}, creating it if needed, loads its topics and registers it
+     * as a listener, so from then on every change made in the menu is also made in the file.
+     *
+     * @param fileName the page file
+     */
+    private static void openDiskStore(String fileName) {
+    	try {
+    		diskStore = new DiskVocabStore(fileName, STORE_CACHE_PAGES);
+    	} catch (IOException e) {
+    		System.out.println("I/O error: could not open the store " + fileName + ": " + e.getMessage());
+    		return;
+    	}
+    	diskStore.exportTo(vocabList);
+    	vocabList.addListener(diskStore);
+    	System.out.println("Loaded " + vocabList.size() + " topics from the store " + fileName + ".");
     }
 
 
@@ -129,23 +292,48 @@ public class Driver {
          
     	 while (showAgain) {
 			printPickATopic();
-			int choice = scanner.nextInt();
+			int choice = console.nextInt();
 			if (choice == 0) {
 				showAgain = false;
 				return;
 			}
 			
-			Vocab vocab = vocabList.getVocabAtIndex((choice - 1));
-			String topic = vocab.getTopic();
-			System.out.println("Topic: " + topic);
-			// Check if the Vocab object exists
-			if (vocab != null) {
-				// Retrieve the WordList associated with the Vocab object
-				WordList wordList = vocab.getWords();
-				wordList.printAllWords();
-			} 
+			if (frozen != null && choice > 0 && choice <= frozen.size()) {
+				System.out.println("Topic: " + frozen.getTopic(choice - 1));
+				frozen.printWords(choice - 1);
+				continue;
+			}
+			
+			// read from the published snapshot, so the listing is one consistent version of the topic
+			PersistentVocabList snapshot = snapshots.current();
+			if (choice > 0 && choice <= snapshot.size()) {
+				PersistentVocabList.Entry entry = snapshot.get(choice - 1);
+				System.out.println("Topic: " + entry.getTopic());
+				printWords(entry.getWords());
+			} else {
+				System.out.println("Invalid choice.");
+			}
 		}    	 
    	}
+    
+	/**
+     * Prints words numbered, four to a line, in the format of {@link WordList#printAllWords()}.
+     *
+     * @param words the words to print
+     */
+	private static void printWords(Iterable<String> words) {
+		int count = 0;
+		for (String word : words) {
+			count++;
+			System.out.printf("%d: %-20s", count, word);
+			if (count % 4 == 0) {
+				System.out.println();
+			}
+		}
+		if (count % 4 != 0) {
+			System.out.println();
+		}
+	}
 
     /**
      * Inserts a new topic before an existing one chosen by the user.
@@ -158,14 +346,13 @@ public class Driver {
    	 	if (vocabList.size() == 0) {
    	 		System.out.println("");
    	 		System.out.println("Enter any number to add the first topic: ");
-   	   	 	int num = scanner.nextInt();
-   	        scanner.nextLine(); // Consume the newline character
+   	   	 	int num = console.nextInt();
    	        
    	        if(num == 0)
    	        	return;
 
    	   	 	System.out.println("Please enter the first topic you would like to add: ");
-   	   	 	String newTopic = scanner.nextLine().trim();
+   	   	 	String newTopic = console.nextLine().trim();
 
    	   	 	vocabList.add(newTopic);
    	   	    addWordsToVocab(0);
@@ -174,15 +361,13 @@ public class Driver {
    	 	}
    	 	
    	 	// minus 1 on index because we enter topic before the chosen index
-   	    int index = (scanner.nextInt()-1);
-	    scanner.nextLine(); // Consume the newline character
+   	    int index = (console.nextInt()-1);
 
    	 	if ((index+1) == 0)
    	 		return;
 
    	 	System.out.println("Please enter the topic you would like to add: ");
-   	 	String newTopic = scanner.next().trim();
-   	    scanner.nextLine();
+   	 	String newTopic = console.nextLine().trim();
    	    
    	    // do not add topic if it already exists
    	    if (vocabList.containsTopic(newTopic)) {
@@ -215,7 +400,7 @@ public class Driver {
 	public static void addWordsToVocab(int index) {
 		
 		System.out.println("Enter any words you would like to add to this topic - to quit press enter: ");
-        String wordsToAdd = scanner.nextLine();
+        String wordsToAdd = console.nextLine();
 
         // Retrieve the Vocab object at the specified index
         Vocab vocab = vocabList.getVocabAtIndex(index);
@@ -226,11 +411,11 @@ public class Driver {
             WordList wordList = vocab.getWords();
 
             // Split the words entered by the user
-            String[] wordsArray = wordsToAdd.split("\\s+");
+            String[] wordsArray = wordsToAdd.trim().split("\\s+");
 
-            // Add each word to the WordList
-            for (String word : wordsArray) {
-                wordList.add(word);
+            // Add the words in one sorted pass, skipping words the topic already has
+            if (!wordsArray[0].isEmpty()) {
+                wordList.addAll(Arrays.asList(wordsArray));
             }
             
         } else {
@@ -252,13 +437,12 @@ public class Driver {
    	 	if (vocabList.size() == 0) {
    	 		System.out.println("");
    	 		System.out.println("Enter any number to add the first topic: ");
-   	   	 	int num = scanner.nextInt();
-   	        scanner.nextLine(); // Consume the newline character
+   	   	 	int num = console.nextInt();
 
    	   	 	if (num == 0)
    	   	 		return; 
    	   	 	System.out.println("Please enter the first topic you would like to add: ");
-   	   	 	String newTopic = scanner.nextLine().trim();
+   	   	 	String newTopic = console.nextLine().trim();
 
    	   	 	vocabList.add(newTopic);
    	   	    addWordsToVocab(0);
@@ -266,15 +450,13 @@ public class Driver {
    	 		return;
    	 	}
    	 	
-   	    int index = scanner.nextInt();
-	    scanner.nextLine(); // Consume the newline character
+   	    int index = console.nextInt();
 
    	 	if (index == 0)
    	 		return;
 
    	 	System.out.println("Please enter the topic you would like to add: ");
-   	 	String newTopic = scanner.next().trim();
-   	    scanner.nextLine();
+   	 	String newTopic = console.nextLine().trim();
    	 	
    	 	if (vocabList.containsTopic(newTopic)) {
    	 		System.out.println("Sorry, this topic already exists.");
@@ -297,7 +479,7 @@ public class Driver {
 		}
 		
 		printPickATopic();
-		int index = scanner.nextInt();
+		int index = console.nextInt();
 		
 		if (index == 0)
 			return;
@@ -315,14 +497,17 @@ public class Driver {
 	private static void modifyTopic() {
 		printPickATopic();
 		
-		int topicIndex = scanner.nextInt();
-	    scanner.nextLine(); // Consume the newline left-over
-
-		Vocab currVocab = vocabList.getVocabAtIndex(topicIndex-1);
-		WordList words = currVocab.getWords();
+		int topicIndex = console.nextInt();
 		
 		if (topicIndex == 0)
 			return;
+
+		Vocab currVocab = vocabList.getVocabAtIndex(topicIndex-1);
+		if (currVocab == null) {
+			System.out.println("Invalid choice.");
+			return;
+		}
+		WordList words = currVocab.getWords();
 		
 		// Display the menu
         System.out.println("-------------------------------");
@@ -335,8 +520,7 @@ public class Driver {
         System.out.println("-------------------------------");
         
         System.out.println("Enter your choice: ");
-        String choice = scanner.nextLine().trim().toLowerCase();
-        scanner.nextLine();
+        String choice = console.nextLine().trim().toLowerCase();
         
         switch (choice) {
             case "a":
@@ -361,7 +545,7 @@ public class Driver {
 	//helper method for modify a topic 
 	private static void addWord(WordList wordList) {
         System.out.println("Please enter the word you would like to add (press enter to end input): ");
-        String word = scanner.nextLine();
+        String word = console.nextLine();
         
         if (wordList.contains(word)) {
 			System.out.println("The word '"+word+"' already exists in the list of words under this topic.");
@@ -376,7 +560,7 @@ public class Driver {
 	//helper method for modify a topic 
 	private static void removeWord(WordList wordList) {
 		System.out.println("Please enter the word you would like to delete (press enter to end input): ");
-        String word = scanner.nextLine();
+        String word = console.nextLine();
 		
 		if (!wordList.contains(word)) {
 			System.out.println("The word '"+word+"' does not exist in the list of words under this topic.");
@@ -391,7 +575,7 @@ public class Driver {
 	//helper method for modify a topic 
 	private static void changeWord(WordList wordList) {
 		System.out.println("Please enter the word you would like to change (press enter to end input): ");
-        String word = scanner.nextLine();
+        String word = console.nextLine();
 		
         if (!wordList.contains(word)) {
 			System.out.println("The word '"+word+"' does not exist in the list of words under this topic.");
@@ -402,7 +586,7 @@ public class Driver {
         
         
 		System.out.println("Enter the word you would like to change it to: ");
-		String newWord = scanner.next();
+		String newWord = console.nextLine().trim();
 
 		wordList.add(newWord);
 		System.out.println("The word '"+word+"' was changed to "+newWord+".");
@@ -413,18 +597,38 @@ public class Driver {
      */
 	private static void searchTopics() {
     	System.out.println("Please enter the word you are looking for: ");
-    	String word = scanner.next();
+    	String word = console.nextLine().trim();
     	
     	boolean wordFound = false;
+    	int skipped = 0;
+    	double falsePositiveRate = 0;
+    	
+    	if (frozen != null) {
+    		boolean[] found = findInTopics(frozen, word);
+    		for (int i = 0; i < frozen.size(); i++) {
+    			if (found[i]) {
+    				System.out.println("Word '" + word + "' found in topic: " + frozen.getTopic(i));
+    				wordFound = true;
+    			}
+    		}
+    		if (!wordFound) {
+    			System.out.println("Word '" + word + "' not found in any topic.");
+    		}
+    		printEntriesWithToken(word);
+    		return;
+    	}
 
-        // Iterate through each topic in the VocabList
-        for (int i = 0; i < vocabList.size(); i++) {
-            Vocab vocab = vocabList.getVocabAtIndex(i);
-            WordList words = vocab.getWords();
-
-            // Check if the word is contained in the WordList of the current topic
-            if (words.contains(word)) {
-                System.out.println("Word '" + word + "' found in topic: " + vocab.getTopic());
+        PersistentVocabList snapshot = snapshots.current();
+        List<Integer> outcomes = findInTopics(snapshot, word);
+        
+        int index = 0;
+        for (PersistentVocabList.Entry entry : snapshot) {
+            falsePositiveRate += entry.getSource().getFilter().estimatedFalsePositiveRate();
+            int outcome = outcomes.get(index++);
+            if (outcome == SKIPPED) {
+            	skipped++;
+            } else if (outcome == FOUND) {
+                System.out.println("Word '" + word + "' found in topic: " + entry.getTopic());
                 wordFound = true;
             }
         }
@@ -433,58 +637,141 @@ public class Driver {
         if (!wordFound) {
             System.out.println("Word '" + word + "' not found in any topic.");
         }
+        
+        if (snapshot.size() > 0) {
+        	System.out.printf("(%d of %d topics skipped by their Bloom filters, estimated false-positive rate %.4f%%)%n",
+        			skipped, snapshot.size(), 100 * falsePositiveRate / snapshot.size());
+        }
+        
+        printEntriesWithToken(word);
 
 	}
+	
+	/**
+     * Looks a word up in every topic of a snapshot, the way option 6 does. Each topic is looked at on its own,
+     * on all cores with --parallel; the outcomes come back in topic order. The Bloom filter rules out most
+     * topics without searching their words; it describes the live topic, which is the published version since
+     * edits happen on the menu's thread.
+     *
+     * @param snapshot the published version to search
+     * @param word the word to look for
+     * @return the outcome for each topic, {@link #SKIPPED}, {@link #MISSED} or {@link #FOUND}
+     */
+	static List<Integer> findInTopics(PersistentVocabList snapshot, String word) {
+		return topicStream(snapshot)
+				.map(entry -> !entry.getSource().mightContain(word) ? SKIPPED
+						: entry.getWords().contains(word) ? FOUND : MISSED)
+				.collect(Collectors.toList());
+	}
+	
+	/**
+     * Looks a word up in every topic of a frozen vocabulary, the way option 6 does while frozen: a binary
+     * search in each topic's word array, on all cores with --parallel.
+     *
+     * @param frozenVocab the frozen topics
+     * @param word the word to look for
+     * @return for each topic, whether it holds the word
+     */
+	static boolean[] findInTopics(FrozenVocab frozenVocab, String word) {
+		IntStream topics = IntStream.range(0, frozenVocab.size());
+		boolean[] found = new boolean[frozenVocab.size()];
+		(parallel ? topics.parallel() : topics).forEach(i -> found[i] = frozenVocab.contains(i, word));
+		return found;
+	}
+	
+	/**
+     * Prints the multi-word and annotated entries that have the searched word as one of their parts, such as
+     * "take off" for "off", with their topics.
+     *
+     * @param word the word that was searched for
+     */
+	private static void printEntriesWithToken(String word) {
+		boolean first = true;
+		for (String entry : tokenIndex.lookup(word)) {
+			// whole-entry matches were listed already
+			if (entry.equalsIgnoreCase(word))
+				continue;
+			if (first) {
+				System.out.println("Entries containing '" + word + "':");
+				first = false;
+			}
+			printWithTopics(entry, tokenIndex.getTopics(entry));
+		}
+	}
+	
+	/**
+     * Prints a word followed by the names of the topics holding it, each name once.
+     *
+     * @param word the word
+     * @param holding the topics holding the word, possibly with repeats
+     */
+	private static void printWithTopics(String word, List<Vocab> holding) {
+		// a word can appear several times in the same topic, list each topic once
+		LinkedHashSet<String> topics = new LinkedHashSet<>();
+		for (Vocab vocab : holding) {
+			topics.add(vocab.getTopic());
+		}
+		System.out.println(word + " " + topics);
+	}
     
 	/**
-     * Loads topics and words from a file chosen by the user.
+     * Loads topics and words from a file chosen by the user. Gzip-compressed files are detected and read directly.
      */
     private static void loadFromFile() {
     	
-    	scanner.nextLine();
         System.out.println("Please enter the name of the file: ");
-        String fileName = scanner.nextLine();
+        String fileName = console.nextLine().trim();
 
         if (!isReadableFile(fileName)) {
             return;
         }
+        
+        if (new File(fileName).isDirectory()) {
+        	loadFromDirectory(new File(fileName));
+        	return;
+        }
+
+        // gzip files are recognised by their first bytes and decompressed while they are parsed
+        try (BufferedReader reader = VocabFiles.openReader(fileName)) {
+            // topics already loaded get the new words instead of a second copy of the topic
+            VocabFiles.read(reader, vocabList);
 
-        Scanner fileScanner = null;
-        try {
-            fileScanner = new Scanner(new FileInputStream(fileName));
-
-            while (fileScanner.hasNextLine()) {
-                String line = fileScanner.nextLine().trim();
-                
-                // Skip blank lines
-                if (line.isEmpty()) {
-                    continue;
-                }
-
-                String currTopic = null;
-                if (line.startsWith("#")) {
-                	// Extract the topic name
-                    currTopic = line.substring(1).trim();
-                    // Add the topic to the VocabList
-                    vocabList.add(currTopic);
-                    continue;
-                }
-                
-                // add words to the topic
-                vocabList.getVocabAtIndex(vocabList.size() - 1).getWords().add(line);
+            // the review state saved next to the file, if any, picks up where the last session stopped
+            int restored = reviewDeck.load(fileName, vocabList);
+            if (restored > 0) {
+                System.out.println("Restored the review state of " + restored + " words.");
             }
 
             System.out.println("Done loading.");
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } finally {
-            if (fileScanner != null) {
-                fileScanner.close();
-            }
+        } catch (IOException e) {
+            System.out.println("I/O error: " + e.getMessage());
         }
     }
 
     
+    /**
+     * Loads the topics saved in a directory by {@link #saveToDirectory(File)}. The directory becomes the
+     * current save directory, so saving back to it only rewrites the topics changed after loading.
+     *
+     * @param directory the directory holding a manifest and one file per topic
+     */
+    private static void loadFromDirectory(File directory) {
+    	if (!ShardedStore.isShardedDirectory(directory)) {
+    		System.out.println("The directory " + directory + " does not contain a saved vocabulary.");
+    		return;
+    	}
+    	if (shardedStore != null) {
+    		shardedStore.detach();
+    	}
+    	shardedStore = new ShardedStore(directory, vocabList);
+    	try {
+    		shardedStore.load();
+    		System.out.println("Done loading.");
+    	} catch (IOException e) {
+    		System.out.println("I/O error: " + e.getMessage());
+    	}
+    }
+    
     /**
      * Checks if the specified file is readable.
      * <p>
@@ -528,35 +815,17 @@ public class Driver {
      */
 	private static void showWordsStartingWith() {
 		System.out.println("Enter the letter you would like to find the words that start with: ");
-		String readletter =  scanner.next();
+		String readletter =  console.nextLine().trim();
 		String input = readletter.trim();
+		if (input.isEmpty()) {
+			System.out.println("No letter entered.");
+			return;
+		}
 		char letter = input.charAt(0);
 		
-		// create an arrayList
-		ArrayList<String> foundWords = new ArrayList<>();
-		
-		boolean wordsFound = false;
-
-        // Iterate through each topic in the VocabList
-        for (int i = 0; i < vocabList.size(); i++) {
-            Vocab vocab = vocabList.getVocabAtIndex(i);
-            
-            WordList words = vocab.getWords();
-            
-            // iterate through each wordList
-            for (int j = 0; j<words.size(); j++) {
-            	String currWord = words.getWordAtIndex(j);
-                char firstLetter = currWord.charAt(0);
-                
-                if(Character.toLowerCase(firstLetter) == Character.toLowerCase(letter)) {
-                	foundWords.add(currWord);
-                	wordsFound = true;
-                }
-            }  
-        }
-
-        // Sort the ArrayList alphabetically
-        Collections.sort(foundWords);
+		ArrayList<String> foundWords = frozen != null ? wordsStartingWith(frozen, letter)
+				: wordsStartingWith(snapshots.current(), letter);
+		boolean wordsFound = !foundWords.isEmpty();
         
         //print the arrayList
         System.out.println("The words starting with the letter '"+letter+"' :");
@@ -570,25 +839,540 @@ public class Driver {
         }
 		
 	}
+	
+	/**
+     * Collects the words of all topics of a snapshot that start with a letter, the way option 8 does. Every
+     * topic's matches are already sorted, since its words are; they are collected per topic, on all cores with
+     * --parallel, and the sorted runs are merged, following the locale's rules if one was chosen.
+     *
+     * @param snapshot the published version to read
+     * @param letter the first letter, matched ignoring case
+     * @return the matching words of all topics, sorted
+     */
+	static ArrayList<String> wordsStartingWith(PersistentVocabList snapshot, char letter) {
+		return WordOrder.mergeAll(topicStream(snapshot)
+				.map(entry -> wordsStartingWith(entry.getWords(), letter))
+				.collect(Collectors.toList()));
+	}
+	
+	/**
+     * Collects the words of all frozen topics that start with a letter, the way option 8 does while frozen.
+     *
+     * @param frozenVocab the frozen topics
+     * @param letter the first letter, matched ignoring case
+     * @return the matching words of all topics, sorted
+     */
+	static ArrayList<String> wordsStartingWith(FrozenVocab frozenVocab, char letter) {
+		IntStream topics = IntStream.range(0, frozenVocab.size());
+		return WordOrder.mergeAll((parallel ? topics.parallel() : topics)
+				.mapToObj(i -> frozenVocab.wordsStartingWith(i, letter))
+				.collect(Collectors.toList()));
+	}
+	
+	/**
+     * Collects the words of a topic that start with a letter, ignoring case, with the keys the topic stores
+     * for them.
+     *
+     * @param words the sorted words of the topic
+     * @param letter the first letter
+     * @return the matching words, in the order of the topic's words
+     */
+	private static ArrayList<WordOrder.Keyed> wordsStartingWith(PersistentWordList words, char letter) {
+		ArrayList<WordOrder.Keyed> found = new ArrayList<>();
+		char lower = Character.toLowerCase(letter);
+		words.forEachKeyed((word, key) -> {
+			if (!word.isEmpty() && Character.toLowerCase(word.charAt(0)) == lower) {
+				found.add(new WordOrder.Keyed(word, key));
+			}
+		});
+		return found;
+	}
+	
+	/**
+     * Returns a stream over the topics of a snapshot, parallel if the program was started with --parallel.
+     *
+     * @param snapshot the published version to read
+     * @return the topics in list order
+     */
+	private static Stream<PersistentVocabList.Entry> topicStream(PersistentVocabList snapshot) {
+		return parallel ? snapshot.parallelStream() : snapshot.stream();
+	}
+
+
+
+	/**
+     * Displays all words, across every topic, that contain a text entered by the user,
+     * together with the topics they belong to.
+     */
+	private static void showWordsContaining() {
+		System.out.println("Enter the text the words should contain: ");
+		String text = console.nextLine().trim();
+		
+		ArrayList<String> foundWords = substringIndex.search(text);
+		
+		if (foundWords.isEmpty()) {
+			System.out.println("No words containing '" + text + "' were found in any topics.");
+			return;
+		}
+		
+		System.out.println("The words containing '" + text + "' :");
+		for (String word : foundWords) {
+			printWithTopics(word, substringIndex.getTopics(word));
+		}
+	}
+
+
+
+	/**
+     * Displays the best ranked completions of a prefix entered by the user, ranked by the number of topics
+     * each word appears in.
+     */
+	private static void suggestCompletions() {
+		System.out.println("Enter the beginning of a word: ");
+		String prefix = console.nextLine().trim();
+		
+		List<Autocomplete.Suggestion> suggestions = autocomplete.suggest(prefix, 10);
+		if (suggestions.isEmpty()) {
+			System.out.println("No words start with '" + prefix + "'.");
+			return;
+		}
+		for (Autocomplete.Suggestion suggestion : suggestions) {
+			System.out.println(suggestion.getWord() + " (" + suggestion.getScore() + ")");
+		}
+	}
+
+
+
+	/**
+     * Saves the topics to a directory with one file per topic and a manifest holding the topic order.
+     * Saving again to the same directory only rewrites the topics that changed since, in parallel. A
+     * vocabulary saved in the directory before, other than the one loaded from it, is only replaced if the
+     * user agrees.
+     *
+     * @param directory the directory to save to, created if needed
+     */
+	private static void saveToDirectory(File directory) {
+		try {
+			if (shardedStore == null || !shardedStore.getDirectory().getAbsoluteFile().equals(directory.getAbsoluteFile())) {
+				ShardedStore store = new ShardedStore(directory, vocabList);
+				// a vocabulary saved there before, but not loaded from there, is replaced only when asked to
+				if (ShardedStore.isShardedDirectory(directory)) {
+					System.out.println("This directory already holds a saved vocabulary, would you like to overide it? (yes/no): ");
+					if (console.nextLine().trim().equalsIgnoreCase("no")) {
+						store.detach();
+						System.out.println("exiting, please retry with another name.");
+						return;
+					}
+					try {
+						store.takeOver();
+					} catch (IOException e) {
+						store.detach();
+						throw e;
+					}
+				}
+				if (shardedStore != null) {
+					shardedStore.detach();
+				}
+				shardedStore = store;
+			}
+			int written = shardedStore.save(snapshots.current());
+			System.out.println("Saved to the directory: " + directory + " (" + written + " of " + vocabList.size() + " topics rewritten)");
+		} catch (IOException e) {
+			System.out.println("I/O error: " + e.getMessage());
+		}
+	}
+
+
+
+	/**
+     * Compares two vocabulary files chosen by the user and writes the added and removed topics and words,
+     * either to the screen or to a patch file that option 15 can apply. Both files are streamed, one topic at a time.
+     */
+	private static void compareFiles() {
+		System.out.println("Please enter the name of the old file: ");
+		String oldFile = console.nextLine().trim();
+		if (!isReadableFile(oldFile))
+			return;
+		System.out.println("Please enter the name of the new file: ");
+		String newFile = console.nextLine().trim();
+		if (!isReadableFile(newFile))
+			return;
+		System.out.println("Enter the name of the patch file to write, or press enter to show the changes: ");
+		String patchFile = console.nextLine().trim();
+		
+		PrintWriter pw = null;
+		try (TopicBlockReader oldBlocks = new TopicBlockReader(oldFile);
+				TopicBlockReader newBlocks = new TopicBlockReader(newFile)) {
+			pw = patchFile.isEmpty() ? new PrintWriter(System.out) : VocabFiles.openWriter(patchFile);
+			VocabDiff.PatchWriter writer = new VocabDiff.PatchWriter(pw);
+			VocabDiff.diff(oldBlocks, newBlocks, writer);
+			pw.flush();
+			System.out.println(writer.getChanges() == 0 ? "The files have the same topics and words." : writer.getChanges() + " lines of changes.");
+		} catch (IOException | UncheckedIOException e) {
+			System.out.println("I/O error: " + e.getMessage());
+		} finally {
+			if (pw != null && !patchFile.isEmpty()) {
+				pw.close();
+			}
+		}
+	}
+	
+	/**
+     * Applies a patch file written by option 14 to the topics currently loaded.
+     */
+	private static void applyPatch() {
+		System.out.println("Please enter the name of the patch file: ");
+		String patchFile = console.nextLine().trim();
+		if (!isReadableFile(patchFile))
+			return;
+		
+		VocabDiff.PatchApplier applier = new VocabDiff.PatchApplier(vocabList);
+		try (BufferedReader reader = VocabFiles.openReader(patchFile)) {
+			VocabDiff.readPatch(reader, applier);
+		} catch (IOException e) {
+			System.out.println("I/O error: " + e.getMessage());
+		}
+		applier.finish();
+		System.out.println(applier.getChanges() + " changes applied.");
+	}
+
+
+
+	/**
+     * Runs a quiz: random words are drawn across all topics and the user picks the topic each one belongs to.
+     * Every word is equally likely to be drawn, and each draw takes constant time.
+     */
+	private static void quiz() {
+		System.out.println("How many questions would you like? ");
+		int questions = console.nextInt();
+		int score = 0;
+		int asked = 0;
+		
+		for (int i = 0; i < questions; i++) {
+			QuizSampler.Draw draw = quizSampler.draw(random);
+			if (draw == null) {
+				System.out.println("There are no words to quiz on yet.");
+				break;
+			}
+			
+			System.out.println("Question " + (i + 1) + ": which topic does '" + draw.getWord() + "' belong to?");
+			printPickATopic();
+			int choice = console.nextInt();
+			if (choice == 0)
+				break;
+			asked++;
+			
+			// the word may be in several topics, any of them is a right answer
+			Vocab answer = vocabList.getVocabAtIndex(choice - 1);
+			boolean correct = answer != null && (frozen != null ? frozen.contains(choice - 1, draw.getWord())
+					: answer.getWords().contains(draw.getWord()));
+			if (correct) {
+				System.out.println("Correct!");
+				score++;
+			} else {
+				System.out.println("Wrong, it is from: " + draw.getVocab().getTopic());
+			}
+		}
+		
+		if (asked > 0) {
+			System.out.println("Your score: " + score + " out of " + asked + ".");
+		}
+	}
+
+
+
+	/**
+     * Starts watching a file chosen by the user, or stops watching if a file is already watched. Starting loads
+     * the file like option 7; afterwards, every time the file is rewritten only the topics and words that
+     * changed are applied, when the next menu option is chosen.
+     */
+	private static void toggleWatch() {
+		if (watcher != null) {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				System.out.println("I/O error: " + e.getMessage());
+			}
+			System.out.println("Stopped watching " + watcher.getFile() + ".");
+			watcher = null;
+			return;
+		}
+		
+		System.out.println("Please enter the name of the file to watch: ");
+		String fileName = console.nextLine().trim();
+		if (!isReadableFile(fileName))
+			return;
+		if (new File(fileName).isDirectory()) {
+			System.out.println("Only a single file can be watched.");
+			return;
+		}
+		
+		try {
+			watcher = new VocabWatcher(fileName);
+		} catch (IOException e) {
+			System.out.println("I/O error: " + e.getMessage());
+			return;
+		}
+		VocabDiff.PatchApplier applier = new VocabDiff.PatchApplier(vocabList);
+		watcher.applyPending(applier);
+		applier.finish();
+		System.out.println("Loaded " + applier.getChanges() + " topics and words. Watching " + watcher.getFile() + " for changes.");
+	}
+	
+	/**
+     * Applies the changes the watcher found in the watched file since the last menu option, as one undoable step.
+     */
+	private static void applyReloads() {
+		// while the topics are frozen the changes wait in the watcher's queue
+		if (watcher == null || frozen != null)
+			return;
+		String error = watcher.takeError();
+		if (error != null) {
+			System.out.println("Could not reload " + watcher.getFile() + ": " + error);
+		}
+		
+		VocabDiff.PatchApplier applier = new VocabDiff.PatchApplier(vocabList);
+		history.beginStep();
+		int versions = watcher.applyPending(applier);
+		applier.finish();
+		history.endStep();
+		if (versions > 0) {
+			System.out.println("Reloaded " + watcher.getFile().getFileName() + ": " + applier.getChanges() + " topics and words changed.");
+		}
+	}
+	
+	/**
+     * Turns autosave on, asking for the file to save to, or turns it off after saving any pending changes.
+     * Changes are saved once the topics have been left alone for two seconds, or thirty seconds after the
+     * first unsaved change while editing continues.
+     */
+	private static void toggleAutoSave() {
+		if (autoSaver != null) {
+			try {
+				autoSaver.close();
+				System.out.println("Autosave is off. " + autoSaver.getSaves() + " saves were written to " + autoSaver.getFile() + ".");
+			} catch (IOException e) {
+				System.out.println("I/O error: the last changes could not be saved: " + e.getMessage());
+			}
+			autoSaver = null;
+			return;
+		}
+		
+		System.out.println("Please enter the name of the file to save to automatically: ");
+		String fileName = console.nextLine().trim();
+		File file = new File(fileName);
+		if (fileName.isEmpty() || file.isDirectory()) {
+			System.out.println("Please enter the name of a file.");
+			return;
+		}
+		
+		// the current topics are saved right away, later changes after each burst of edits
+		autoSaver = new AutoSaver(vocabList, snapshots, file, 2000, 30000);
+		System.out.println("Autosave is on. Changes are saved to " + autoSaver.getFile() + ".");
+	}
+	
+	/**
+     * Tells whether a menu option changes the topics or words, and so is refused while they are frozen.
+     *
+     * @param choice the menu option
+     * @return {@code true} for options that edit
+     */
+	private static boolean isEdit(int choice) {
+		switch (choice) {
+			case 2: case 3: case 4: case 5: case 7: case 11: case 12: case 15: case 18:
+				return true;
+			default:
+				return false;
+		}
+	}
+	
+	/**
+     * Freezes the topics into flat arrays, or thaws them if they are frozen. While frozen, the words are held
+     * only in the arrays: browsing, searching, listing words by first letter, quizzing and saving read them,
+     * and every option that edits is refused. Thawing moves the words back into the linked lists.
+     */
+	private static void toggleFreeze() {
+		if (frozen != null) {
+			frozen.thaw(vocabList);
+			frozen = null;
+			System.out.println("The topics are thawed and can be edited again.");
+			return;
+		}
+		frozen = FrozenVocab.freeze(vocabList);
+		System.out.println("Froze " + frozen.size() + " topics and " + frozen.wordCount() + " words. Choose 21 again to edit.");
+	}
+	
+	/**
+     * Lists the words matching a boolean expression over topics, written with AND, OR, NOT and parentheses.
+     */
+	private static void queryTopics() {
+		System.out.println("Enter the topics to combine, with AND, OR, NOT in capitals and parentheses: ");
+		String expression = console.nextLine().trim();
+		
+		List<String> foundWords;
+		try {
+			foundWords = topicBitmaps.query(expression);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			return;
+		}
+		
+		if (foundWords.isEmpty()) {
+			System.out.println("No words match " + expression + ".");
+			return;
+		}
+		
+		System.out.println("The " + foundWords.size() + " words matching " + expression + " :");
+		for (String word : foundWords) {
+			printWithTopics(word, topicBitmaps.getTopics(word));
+		}
+	}
+	
+	/**
+     * Prints the heap retained by each topic, largest first, and the total. The user chooses between the fast
+     * estimate and the slower exact measurement.
+     */
+	private static void showMemoryUse() {
+		if (vocabList.size() == 0) {
+			System.out.println("There are no topics loaded.");
+			return;
+		}
+		System.out.println("Measure exactly, walking every object? This is slower on large vocabularies. (yes/no): ");
+		boolean exact = console.nextLine().trim().equalsIgnoreCase("yes");
+		
+		ArrayList<Vocab> topics = new ArrayList<>();
+		ArrayList<Long> sizes = new ArrayList<>();
+		long total = HeapFootprint.listOverhead(vocabList, exact);
+		for (Vocab vocab : vocabList) {
+			long bytes = exact ? HeapFootprint.measure(vocab) : HeapFootprint.estimate(vocab);
+			topics.add(vocab);
+			sizes.add(bytes);
+			total += bytes;
+		}
+		Integer[] ranking = new Integer[topics.size()];
+		for (int i = 0; i < ranking.length; i++) {
+			ranking[i] = i;
+		}
+		Arrays.sort(ranking, (a, b) -> Long.compare(sizes.get(b), sizes.get(a)));
+		
+		System.out.println((exact ? "Measured" : "Estimated") + " heap use per topic ("
+				+ (HeapFootprint.compressedReferences() ? "compressed" : "8-byte") + " references):");
+		System.out.printf("%4s  %-30s %10s %14s %7s%n", "#", "Topic", "Words", "Bytes", "Share");
+		for (int rank = 0; rank < ranking.length; rank++) {
+			Vocab vocab = topics.get(ranking[rank]);
+			long bytes = sizes.get(ranking[rank]);
+			System.out.printf("%4d  %-30s %10d %14s %6.1f%%%n", rank + 1, vocab.getTopic(), vocab.getWords().size(),
+					String.format("%,d", bytes), 100.0 * bytes / total);
+		}
+		System.out.printf("Total: %,d bytes (%.1f MB) for %d topics.%n", total, total / (1024.0 * 1024.0), vocabList.size());
+		if (frozen != null) {
+			System.out.println("The topics are frozen: their " + frozen.wordCount() + " words are in flat arrays, not counted above.");
+		}
+	}
+	
+	/**
+     * Reviews the words that are due, one at a time. The user grades how well each word was remembered, and
+     * the word comes back sooner or later accordingly. An empty answer stops the review.
+     */
+	private static void reviewDueWords() {
+		int reviewed = 0;
+		while (true) {
+			long now = System.currentTimeMillis();
+			int card = reviewDeck.nextDue(now);
+			if (card < 0) {
+				ReviewScheduler scheduler = reviewDeck.getScheduler();
+				if (scheduler.size() == 0) {
+					System.out.println("There are no words to review yet.");
+				} else {
+					System.out.println("No more words are due. The next one is due on "
+							+ new Date(scheduler.getDue(scheduler.peek())) + ".");
+				}
+				break;
+			}
+			
+			System.out.println("Topic: " + reviewDeck.getVocab(card).getTopic() + "    Word: " + reviewDeck.getWord(card));
+			System.out.println("How well did you remember it? (0 = not at all ... 5 = perfectly, empty line to stop): ");
+			String answer = console.nextLine().trim();
+			if (answer.isEmpty())
+				break;
+			int grade;
+			try {
+				grade = Integer.parseInt(answer);
+			} catch (NumberFormatException e) {
+				grade = -1;
+			}
+			if (grade < 0 || grade > 5) {
+				System.out.println("Please enter a number between 0 and 5.");
+				continue;
+			}
+			reviewDeck.review(card, grade, now);
+			reviewed++;
+		}
+		System.out.println("Reviewed " + reviewed + " words.");
+	}
+
+
+
+	/**
+     * Reverts the most recent change made through the menu.
+     */
+	private static void undo() {
+		if (history.undo()) {
+			System.out.println("The last change was undone.");
+		} else {
+			System.out.println("There is nothing to undo.");
+		}
+	}
+	
+	/**
+     * Re-applies the most recently undone change.
+     */
+	private static void redo() {
+		if (history.redo()) {
+			System.out.println("The last undone change was redone.");
+		} else {
+			System.out.println("There is nothing to redo.");
+		}
+	}
 
 
 
 	/**
-     * Saves the current topics and words to a file named "A3_output_file.txt".
+     * Writes the topics and words the way option 9 does: from the frozen arrays while frozen, otherwise from
+     * one published snapshot, so the file never mixes states from before and after an edit.
+     *
+     * @param snapshot the published version to write when not frozen
+     * @param frozenVocab the frozen topics, or {@code null}
+     * @param pw the writer receiving the text
+     */
+	static void write(PersistentVocabList snapshot, FrozenVocab frozenVocab, PrintWriter pw) {
+		if (frozenVocab != null) {
+			frozenVocab.write(pw);
+		} else {
+			VocabFiles.write(snapshot, pw);
+		}
+	}
+	
+	/**
+     * Saves the current topics and words to a file chosen by the user, gzip-compressed if its name ends in .gz.
      */
 	private static void saveToFile() {
 		PrintWriter pw = null;
 		
         System.out.println("Please enter the name of the text file you would like to save to: ");
-        String fileName = scanner.next();
-        scanner.nextLine();
+        String fileName = console.nextLine().trim();
         
         File file = new File(fileName);
         
+        // a directory gets one file per topic, and only the changed topics are rewritten
+        if (file.isDirectory() || fileName.endsWith("/") || fileName.endsWith(File.separator)) {
+        	saveToDirectory(file);
+        	return;
+        }
+        
         if (file.exists()) {
             System.out.println("This file already exists would you like to overide it? (yes/no): ");
-            String choice = scanner.next();
-            scanner.nextLine();
+            String choice = console.nextLine().trim();
             
             if (choice.equalsIgnoreCase("no")) {
             	System.out.println("exiting, please retry with another name.");
@@ -598,29 +1382,25 @@ public class Driver {
         }
         		
 		try {
-			pw = new PrintWriter(new FileOutputStream(fileName));
+			// names ending in .gz are compressed in parallel blocks
+			pw = VocabFiles.openWriter(fileName);
 		} catch (FileNotFoundException e) {
 			System.out.println(e.getMessage());
+			return;
 		}
 		
-		// Iterate through each topic in the VocabList
-        for (int i = 0; i < vocabList.size(); i++) {
-            Vocab vocab = vocabList.getVocabAtIndex(i);
-            
-            pw.println("#"+vocab.getTopic());
-            
-            WordList words = vocab.getWords();
-            
-            // iterate through each word in the wordList
-            for (int j = 0; j < words.size(); j++) {
-            	String currWord = words.getWordAtIndex(j);
-                
-            	pw.println(currWord);
-            	
-                }
-            } 
+		write(snapshots.current(), frozen, pw);
          pw.close();
+         if (pw.checkError()) {
+        	 System.out.println("I/O error: could not write the file " + fileName);
+        	 return;
+         }
          System.out.println("Saved to the file: "+fileName);
+         try {
+        	 reviewDeck.save(fileName);
+         } catch (IOException e) {
+        	 System.out.println("I/O error: could not save the review state: " + e.getMessage());
+         }
         
         }
     
@@ -0,0 +1,230 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A read-only copy of a {@link VocabList} laid out in flat arrays, compressed sparse row style.
+ * <p>
+ * The topic names are in one array and all words in another, topic after topic, each topic's words sorted by
+ * {@link WordOrder}. The words of topic {@code t} are {@code words[offsets[t]]} up to but excluding
+ * {@code words[offsets[t + 1]]}. Looking a word up is a binary search in that range and listing words is a
+ * sequential scan, instead of following nodes scattered over the heap. The collation keys, when a locale is
+ * in use, are kept in a parallel array so no comparison has to recompute one.
+ * </p>
+ * <p>
+ * Freezing moves the words out of the linked word lists, which are left empty, so the words are held once.
+ * The topics, their {@link Vocab} objects and the indexes listening to the list stay as they are; nothing is
+ * reported to them, since the vocabulary has not changed. {@link #thaw(VocabList)} moves the words back.
+ * </p>
+ */
+final class FrozenVocab {
+
+    private final String[] topics;
+    private final int[] offsets;
+    private final String[] words;
+    // null in the default binary order
+    private final byte[][] keys;
+
+    private FrozenVocab(String[] topics, int[] offsets, String[] words, byte[][] keys) {
+        this.topics = topics;
+        this.offsets = offsets;
+        this.words = words;
+        this.keys = keys;
+    }
+
+    /**
+     * Moves the topics and words of a list into the flat layout, emptying its word lists. The list must not be
+     * edited until it is thawed.
+     *
+     * @param vocabList the list to freeze
+     * @return the frozen vocabulary
+     */
+    static FrozenVocab freeze(VocabList vocabList) {
+        String[] topics = new String[vocabList.size()];
+        int[] offsets = new int[topics.length + 1];
+        int total = 0;
+        int t = 0;
+        for (Vocab vocab : vocabList) {
+            topics[t] = vocab.getTopic();
+            total += vocab.getWords().size();
+            offsets[++t] = total;
+        }
+
+        String[] words = new String[total];
+        boolean keyed = WordOrder.key("a") != null;
+        byte[][] keys = keyed ? new byte[total][] : null;
+        int w = 0;
+        for (Vocab vocab : vocabList) {
+            // word lists are already sorted
+            for (String word : vocab.getWords()) {
+                if (keyed) {
+                    keys[w] = WordOrder.key(word);
+                }
+                words[w++] = word;
+            }
+            vocab.getWords().release();
+        }
+        return new FrozenVocab(topics, offsets, words, keys);
+    }
+
+    /**
+     * Moves the words back into the word lists of the list this was frozen from, exactly as they were.
+     * This object must not be used afterwards.
+     *
+     * @param vocabList the list passed to {@link #freeze(VocabList)}, unchanged since
+     * @throws IllegalStateException if the list's topics changed while it was frozen
+     */
+    void thaw(VocabList vocabList) {
+        if (vocabList.size() != topics.length) {
+            throw new IllegalStateException("The topics changed while they were frozen");
+        }
+        int t = 0;
+        for (Vocab vocab : vocabList) {
+            vocab.getWords().restore(words, keys, offsets[t], offsets[t + 1]);
+            t++;
+        }
+    }
+
+    /**
+     * Returns the number of topics.
+     *
+     * @return the number of topics
+     */
+    public int size() {
+        return topics.length;
+    }
+
+    /**
+     * Returns the name of a topic.
+     *
+     * @param topic the position of the topic, from 0
+     * @return the topic name
+     */
+    public String getTopic(int topic) {
+        return topics[topic];
+    }
+
+    /**
+     * Returns the number of words in a topic.
+     *
+     * @param topic the position of the topic, from 0
+     * @return the number of words
+     */
+    public int wordCount(int topic) {
+        return offsets[topic + 1] - offsets[topic];
+    }
+
+    /**
+     * Returns the total number of words in all topics.
+     *
+     * @return the number of words
+     */
+    public int wordCount() {
+        return words.length;
+    }
+
+    /**
+     * Returns the words of a topic.
+     *
+     * @param topic the position of the topic, from 0
+     * @return the sorted words, as a view of the shared array
+     */
+    public List<String> getWords(int topic) {
+        return Arrays.asList(words).subList(offsets[topic], offsets[topic + 1]);
+    }
+
+    /**
+     * Determines whether a topic holds a word, by binary search.
+     *
+     * @param topic the position of the topic, from 0
+     * @param word the word, in lower case as the lists store it
+     * @return {@code true} if the topic holds the word
+     */
+    public boolean contains(int topic, String word) {
+        byte[] key = keys == null ? null : WordOrder.key(word);
+        int at = lowerBound(offsets[topic], offsets[topic + 1], key, word);
+        return at < offsets[topic + 1] && words[at].equals(word);
+    }
+
+    /**
+     * Collects the words of a topic whose first letter is the given letter, ignoring case.
+     *
+     * @param topic the position of the topic, from 0
+     * @param letter the first letter
+     * @return the matching words with their keys, sorted
+     */
+    public ArrayList<WordOrder.Keyed> wordsStartingWith(int topic, char letter) {
+        ArrayList<WordOrder.Keyed> found = new ArrayList<>();
+        char lower = Character.toLowerCase(letter);
+        int from = offsets[topic];
+        int to = offsets[topic + 1];
+        if (keys == null) {
+            // in binary order the words starting with a letter are one run, found by binary search
+            for (int w = lowerBound(from, to, null, String.valueOf(lower)); w < to; w++) {
+                if (Character.toLowerCase(words[w].charAt(0)) != lower) {
+                    break;
+                }
+                found.add(new WordOrder.Keyed(words[w], null));
+            }
+        } else {
+            // collation mixes accented first letters in, so scan the whole run
+            for (int w = from; w < to; w++) {
+                if (!words[w].isEmpty() && Character.toLowerCase(words[w].charAt(0)) == lower) {
+                    found.add(new WordOrder.Keyed(words[w], keys[w]));
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Prints the words of a topic in the format of {@link WordList#printAllWords()}.
+     *
+     * @param topic the position of the topic, from 0
+     */
+    public void printWords(int topic) {
+        int count = 0;
+        for (int w = offsets[topic]; w < offsets[topic + 1]; w++) {
+            count++;
+            System.out.printf("%d: %-20s", count, words[w]);
+            if (count % 4 == 0) {
+                System.out.println();
+            }
+        }
+        if (count % 4 != 0) {
+            System.out.println();
+        }
+    }
+
+    /**
+     * Writes the topics and words in the {@code #topic} file format.
+     *
+     * @param pw the writer receiving the text
+     */
+    public void write(PrintWriter pw) {
+        for (int t = 0; t < topics.length; t++) {
+            pw.println("#" + topics[t]);
+            for (int w = offsets[t]; w < offsets[t + 1]; w++) {
+                pw.println(words[w]);
+            }
+        }
+    }
+
+    /**
+     * Returns the first position in {@code [from, to)} whose word does not sort before the given word.
+     */
+    private int lowerBound(int from, int to, byte[] key, String word) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (WordOrder.compare(keys == null ? null : keys[mid], words[mid], key, word) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
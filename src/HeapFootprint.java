@@ -0,0 +1,229 @@
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Estimates how many bytes of heap each topic retains: its {@link Vocab}, the {@link WordList} and its nodes,
+ * the word strings and their character arrays, the sort keys, the Bloom filter and the node linking the topic
+ * into the {@link VocabList}.
+ * <p>
+ * {@link #estimate(Vocab)} is the fast model: it only looks at the number and length of the words and prices
+ * every object from the object layout of the running JVM (header size, reference size, 8-byte alignment).
+ * {@link #measure(Vocab)} is the exact mode: it walks the actual objects reachable from the topic by
+ * reflection, counts each object once even if it is shared, and sizes it from its class's fields. Structures
+ * kept by listeners, such as the search indexes, belong to the listeners and are not counted.
+ * </p>
+ */
+final class HeapFootprint {
+
+    private static final int ALIGNMENT;
+    private static final int REFERENCE;
+    private static final int HEADER;
+    private static final int ARRAY_HEADER;
+
+    static {
+        boolean compressedOops = Runtime.getRuntime().maxMemory() < 32L * 1024 * 1024 * 1024;
+        boolean compressedClasses = compressedOops;
+        int alignment = 8;
+        try {
+            HotSpotDiagnosticMXBean hotSpot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            compressedOops = Boolean.parseBoolean(hotSpot.getVMOption("UseCompressedOops").getValue());
+            compressedClasses = Boolean.parseBoolean(hotSpot.getVMOption("UseCompressedClassPointers").getValue());
+            alignment = Integer.parseInt(hotSpot.getVMOption("ObjectAlignmentInBytes").getValue());
+        } catch (RuntimeException | LinkageError e) {
+            // not a HotSpot JVM: keep the defaults of a 64-bit JVM with a heap under 32 GB
+        }
+        ALIGNMENT = alignment;
+        REFERENCE = compressedOops ? 4 : 8;
+        // mark word plus class pointer, and the length field for arrays
+        HEADER = compressedClasses ? 12 : 16;
+        ARRAY_HEADER = compressedClasses ? 16 : 24;
+    }
+
+    private HeapFootprint() {
+    }
+
+    /**
+     * Returns whether the JVM stores references in 4 bytes.
+     *
+     * @return {@code true} with compressed references
+     */
+    static boolean compressedReferences() {
+        return REFERENCE == 4;
+    }
+
+    /**
+     * Estimates the bytes retained by a topic from the number and length of its words.
+     *
+     * @param vocab the topic
+     * @return the estimated number of bytes
+     */
+    static long estimate(Vocab vocab) {
+        // Vocab: topic, words, list, filter; WordList: head, tail, owner, count
+        long bytes = align(HEADER + 4 * REFERENCE) + string(vocab.getTopic()) + align(HEADER + 3 * REFERENCE + 4);
+        // VocabList.DNode: vocab, next, prev and the enclosing list
+        bytes += align(HEADER + 4 * REFERENCE);
+
+        // WordNode: word, key, next and the enclosing list
+        long node = align(HEADER + 4 * REFERENCE);
+        boolean keyed = WordOrder.key("a") != null;
+        for (String word : vocab.getWords()) {
+            bytes += node + string(word);
+            if (keyed) {
+                // a collation key holds two bytes per character for each of its three strength levels
+                bytes += array(6L * word.length() + 4);
+            }
+        }
+
+        BloomFilter filter = vocab.peekFilter();
+        if (filter != null) {
+            // bits, and four int fields
+            bytes += align(HEADER + REFERENCE + 16) + array(filter.sizeInBytes());
+        }
+        return bytes;
+    }
+
+    /**
+     * Measures the bytes retained by a topic by walking the objects reachable from it. The walk stops at the
+     * list the topic is linked into and at other topics, which are not retained by this one.
+     *
+     * @param vocab the topic
+     * @return the number of bytes
+     */
+    static long measure(Vocab vocab) {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        seen.add(vocab);
+        pending.add(vocab);
+        // the DNode is not reachable from the topic, only from the list
+        long bytes = fieldsSize(dNodeClass());
+
+        Object object;
+        while ((object = pending.poll()) != null) {
+            Class<?> type = object.getClass();
+            if (type == String.class) {
+                bytes += string((String) object);
+                continue;
+            }
+            if (type.isArray()) {
+                int length = Array.getLength(object);
+                Class<?> component = type.getComponentType();
+                bytes += array((long) length * slotSize(component));
+                if (!component.isPrimitive()) {
+                    for (int i = 0; i < length; i++) {
+                        follow(Array.get(object, i), vocab, seen, pending);
+                    }
+                }
+                continue;
+            }
+            bytes += fieldsSize(type);
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                        continue;
+                    }
+                    try {
+                        field.setAccessible(true);
+                        follow(field.get(object), vocab, seen, pending);
+                    } catch (RuntimeException | IllegalAccessException e) {
+                        // a JDK class that does not open its fields: its own size is counted, not what it refers to
+                    }
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Estimates the bytes of the list itself, apart from its topics.
+     *
+     * @param vocabList the list
+     * @param exact whether to size it from its fields rather than the model
+     * @return the number of bytes
+     */
+    static long listOverhead(VocabList vocabList, boolean exact) {
+        // head, tail, count and listeners
+        return exact ? fieldsSize(VocabList.class) : align(HEADER + 3 * REFERENCE + 4);
+    }
+
+    private static void follow(Object target, Vocab root, Set<Object> seen, ArrayDeque<Object> pending) {
+        if (target == null || target instanceof VocabList || target instanceof Class
+                || (target instanceof Vocab && target != root)) {
+            return;
+        }
+        if (seen.add(target)) {
+            pending.add(target);
+        }
+    }
+
+    /**
+     * Sizes an instance of a class from the fields it and its superclasses declare.
+     */
+    private static long fieldsSize(Class<?> type) {
+        long bytes = HEADER;
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    bytes += slotSize(field.getType());
+                }
+            }
+        }
+        return align(bytes);
+    }
+
+    private static int slotSize(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return REFERENCE;
+        }
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == int.class || type == float.class) {
+            return 4;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static Class<?> dNodeClass() {
+        for (Class<?> inner : VocabList.class.getDeclaredClasses()) {
+            if (inner.getSimpleName().equals("DNode")) {
+                return inner;
+            }
+        }
+        throw new IllegalStateException("VocabList has no DNode class");
+    }
+
+    /**
+     * A string and its backing array, one byte per character when every character fits in Latin-1.
+     */
+    private static long string(String s) {
+        if (s == null) {
+            return 0;
+        }
+        // value, hash, coder and hashIsZero
+        long bytes = align(HEADER + REFERENCE + 4 + 1 + 1);
+        boolean latin1 = true;
+        for (int i = 0; i < s.length() && latin1; i++) {
+            latin1 = s.charAt(i) <= 0xFF;
+        }
+        return bytes + array(latin1 ? s.length() : 2L * s.length());
+    }
+
+    private static long array(long payload) {
+        return align(ARRAY_HEADER + payload);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
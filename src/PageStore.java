@@ -0,0 +1,248 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A single local file split into fixed size pages, with a buffer pool that keeps the most recently used
+ * pages in memory as decoded {@link BPlusTree.Node}s.
+ * <p>
+ * Page 0 is a header holding the page count and a few integer slots (tree roots, counters) for the structures
+ * stored in the file. All other pages hold one tree node each. When the pool is full the least recently used
+ * node is evicted, and written back first if it was modified. A caller that modifies a node must hand it back
+ * with {@link #put(BPlusTree.Node)}, which marks it dirty and re-admits it to the pool if it was evicted
+ * in the meantime.
+ * </p>
+ */
+class PageStore implements Closeable {
+
+    /**
+     * The size of every page in bytes.
+     */
+    static final int PAGE_SIZE = 4096;
+
+    /**
+     * The number of integer slots in the header that callers may use for their own bookkeeping.
+     */
+    static final int HEADER_SLOTS = 8;
+
+    private static final int MAGIC = 0x564f4342; // "VOCB"
+    private static final int VERSION = 1;
+
+    private final FileChannel channel;
+    private final LinkedHashMap<Integer, BPlusTree.Node> pool;
+    private final int capacity;
+    private int pageCount;
+    private int[] slots = new int[HEADER_SLOTS];
+    private boolean headerDirty;
+
+    /**
+     * Opens the page file with the given name, creating an empty one if it does not exist.
+     *
+     * @param fileName the file holding the pages
+     * @param capacity the maximum number of pages kept in memory
+     * @throws IOException if the file cannot be opened or is not a page file
+     */
+    public PageStore(String fileName, int capacity) throws IOException {
+        if (capacity < 8) {
+            throw new IllegalArgumentException("The buffer pool needs room for at least 8 pages");
+        }
+        this.capacity = capacity;
+        this.channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // access ordered, so iteration starts at the least recently used page
+        this.pool = new LinkedHashMap<>(capacity * 2, 0.75f, true);
+
+        if (channel.size() == 0) {
+            pageCount = 1;
+            headerDirty = true;
+            writeHeader();
+        } else {
+            readHeader();
+        }
+    }
+
+    /**
+     * Returns whether the file was created empty and holds no pages besides the header.
+     *
+     * @return {@code true} if no page has been allocated yet
+     */
+    public boolean isEmpty() {
+        return pageCount == 1;
+    }
+
+    /**
+     * Returns a header slot.
+     *
+     * @param slot the slot number, from 0 to {@link #HEADER_SLOTS} - 1
+     * @return the value stored in the slot
+     */
+    public int getSlot(int slot) {
+        return slots[slot];
+    }
+
+    /**
+     * Sets a header slot. The header is written back on the next {@link #flush()}.
+     *
+     * @param slot the slot number, from 0 to {@link #HEADER_SLOTS} - 1
+     * @param value the value to store
+     */
+    public void setSlot(int slot, int value) {
+        slots[slot] = value;
+        headerDirty = true;
+    }
+
+    /**
+     * Allocates a new page holding the given node, and admits the node to the pool.
+     *
+     * @param node a node whose page has not been assigned yet
+     * @return the node, now carrying its page number
+     */
+    public BPlusTree.Node allocate(BPlusTree.Node node) {
+        node.pageId = pageCount++;
+        headerDirty = true;
+        put(node);
+        return node;
+    }
+
+    /**
+     * Returns the node stored in a page, reading it from the file if it is not in the pool.
+     *
+     * @param pageId the page number
+     * @return the node stored in the page
+     */
+    public BPlusTree.Node get(int pageId) {
+        BPlusTree.Node node = pool.get(pageId);
+        if (node != null) {
+            return node;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        try {
+            readFully(buffer, (long) pageId * PAGE_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.flip();
+        node = BPlusTree.Node.readFrom(buffer);
+        node.pageId = pageId;
+        admit(node);
+        return node;
+    }
+
+    /**
+     * Marks a node as modified and makes sure it is in the pool, so the change reaches the file.
+     *
+     * @param node a node that has been changed
+     */
+    public void put(BPlusTree.Node node) {
+        node.dirty = true;
+        if (pool.get(node.pageId) != node) {
+            admit(node);
+        }
+    }
+
+    /**
+     * Writes every modified page and the header to the file.
+     *
+     * @throws IOException if writing fails
+     */
+    public void flush() throws IOException {
+        for (BPlusTree.Node node : pool.values()) {
+            if (node.dirty) {
+                write(node);
+            }
+        }
+        writeHeader();
+        channel.force(false);
+    }
+
+    /**
+     * Flushes all modified pages and closes the file.
+     *
+     * @throws IOException if writing or closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Adds a node to the pool, evicting the least recently used pages while the pool is over capacity.
+     */
+    private void admit(BPlusTree.Node node) {
+        pool.put(node.pageId, node);
+        Iterator<Map.Entry<Integer, BPlusTree.Node>> eldest = pool.entrySet().iterator();
+        while (pool.size() > capacity) {
+            BPlusTree.Node victim = eldest.next().getValue();
+            if (victim.dirty) {
+                try {
+                    write(victim);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            eldest.remove();
+        }
+    }
+
+    private void write(BPlusTree.Node node) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        node.writeTo(buffer);
+        buffer.position(0).limit(PAGE_SIZE);
+        long offset = (long) node.pageId * PAGE_SIZE;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+        node.dirty = false;
+    }
+
+    private void readHeader() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        readFully(buffer, 0);
+        buffer.flip();
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a vocabulary page file");
+        }
+        pageCount = buffer.getInt();
+        for (int i = 0; i < HEADER_SLOTS; i++) {
+            slots[i] = buffer.getInt();
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        if (!headerDirty) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(pageCount);
+        for (int slot : slots) {
+            buffer.putInt(slot);
+        }
+        buffer.position(0).limit(PAGE_SIZE);
+        long offset = 0;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+        headerDirty = false;
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of page file");
+            }
+            offset += read;
+        }
+    }
+}
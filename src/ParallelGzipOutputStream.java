@@ -0,0 +1,127 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An output stream that gzip-compresses its data in fixed size blocks on all available cores.
+ * <p>
+ * Each block is compressed independently into a complete gzip member, and the members are written to the
+ * underlying stream in order. A file made of concatenated members is valid gzip and is read back as one
+ * stream by {@link java.util.zip.GZIPInputStream} and by the {@code gzip} tool. At most two blocks per core
+ * are in flight, so memory use is bounded no matter how much is written.
+ * </p>
+ */
+class ParallelGzipOutputStream extends OutputStream {
+
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int length;
+    private boolean closed;
+
+    /**
+     * Constructs a stream that writes compressed data to the given stream.
+     *
+     * @param out the stream receiving the gzip members
+     */
+    public ParallelGzipOutputStream(OutputStream out) {
+        this.out = out;
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "gzip-block");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxInFlight = threads * 2;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == block.length) {
+            submit();
+        }
+        block[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) throws IOException {
+        while (count > 0) {
+            if (length == block.length) {
+                submit();
+            }
+            int chunk = Math.min(count, block.length - length);
+            System.arraycopy(bytes, offset, block, length, chunk);
+            length += chunk;
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+
+    /**
+     * Compresses the buffered data as a final block, writes all remaining members and closes the
+     * underlying stream.
+     *
+     * @throws IOException if compressing or writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (length > 0) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeOldest();
+            }
+        } finally {
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    /**
+     * Hands the current block to a compression thread, first writing finished members if too many are in flight.
+     */
+    private void submit() throws IOException {
+        while (pending.size() >= maxInFlight) {
+            writeOldest();
+        }
+        byte[] data = block;
+        int size = length;
+        pending.addLast(executor.submit(() -> compress(data, size)));
+        block = new byte[BLOCK_SIZE];
+        length = 0;
+    }
+
+    private void writeOldest() throws IOException {
+        try {
+            out.write(pending.removeFirst().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Compression failed", e.getCause());
+        }
+    }
+
+    private static byte[] compress(byte[] data, int size) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(size / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(member, 1 << 16)) {
+            gzip.write(data, 0, size);
+        }
+        return member.toByteArray();
+    }
+}
@@ -0,0 +1,382 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable list of topics with their words, used as a consistent snapshot of a {@link VocabList}.
+ * <p>
+ * Every topic has a slot, a small number chosen by the caller that stays the same while the topic is in the
+ * list. The entries are stored by slot in a persistent trie of 32-way arrays, and the topic order is a
+ * persistent AVL tree of slots indexed by position. Changing a topic's words replaces its entry by slot
+ * without searching for it, and inserting or removing a topic at a position touches one path of the tree;
+ * both cost O(log n) and share everything else with the previous version. The words of each topic are a
+ * {@link PersistentWordList} that shares structure between versions as well. Readers holding a version are
+ * never affected by later changes, so they need no locks.
+ * </p>
+ */
+final class PersistentVocabList implements Iterable<PersistentVocabList.Entry> {
+
+    // the slot trie's fan-out
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    /**
+     * The empty list.
+     */
+    static final PersistentVocabList EMPTY = new PersistentVocabList(null, new Object[WIDTH], 0);
+
+    /**
+     * One topic of a snapshot.
+     */
+    static final class Entry {
+        private final Vocab source;
+        private final String topic;
+        private final PersistentWordList words;
+
+        Entry(Vocab source, String topic, PersistentWordList words) {
+            this.source = source;
+            this.topic = topic;
+            this.words = words;
+        }
+
+        /**
+         * Returns the live vocabulary this entry was taken from, used to match later changes to the entry.
+         *
+         * @return the source vocabulary
+         */
+        public Vocab getSource() {
+            return source;
+        }
+
+        /**
+         * Returns the topic as it was when the snapshot was taken.
+         *
+         * @return the topic name
+         */
+        public String getTopic() {
+            return topic;
+        }
+
+        /**
+         * Returns the words of the topic as they were when the snapshot was taken.
+         *
+         * @return the words of the topic
+         */
+        public PersistentWordList getWords() {
+            return words;
+        }
+    }
+
+    /**
+     * An immutable node of the order tree, holding the slot of the topic at its position.
+     */
+    private static final class Node {
+        final int slot;
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        Node(int slot, Node left, Node right) {
+            this.slot = slot;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = 1 + size(left) + size(right);
+        }
+    }
+
+    private final Node order;
+    // the root of the slot trie; its leaves hold entries, the levels above hold arrays of the level below
+    private final Object[] slots;
+    // the bit position of the root level's index in a slot, 0 when the root is a leaf
+    private final int shift;
+
+    private PersistentVocabList(Node order, Object[] slots, int shift) {
+        this.order = order;
+        this.slots = slots;
+        this.shift = shift;
+    }
+
+    /**
+     * Returns the number of topics.
+     *
+     * @return the size of the list
+     */
+    public int size() {
+        return size(order);
+    }
+
+    /**
+     * Returns the topic at the specified index.
+     *
+     * @param index the index of the topic
+     * @return the topic entry
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public Entry get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index is out of bounds");
+        }
+        Node node = order;
+        while (true) {
+            int left = size(node.left);
+            if (index < left) {
+                node = node.left;
+            } else if (index > left) {
+                index -= left + 1;
+                node = node.right;
+            } else {
+                return entry(node.slot);
+            }
+        }
+    }
+
+    /**
+     * Returns the topic in the given slot.
+     *
+     * @param slot the slot the topic was inserted with
+     * @return the topic entry, or {@code null} if the slot is not in use
+     */
+    public Entry entry(int slot) {
+        if (slot >>> shift >= WIDTH) {
+            return null;
+        }
+        Object[] level = slots;
+        for (int s = shift; s > 0; s -= BITS) {
+            level = (Object[]) level[(slot >>> s) & MASK];
+            if (level == null) {
+                return null;
+            }
+        }
+        return (Entry) level[slot & MASK];
+    }
+
+    /**
+     * Returns a list with an entry inserted at the specified index.
+     *
+     * @param index the position of the new entry, from 0 to {@link #size()}
+     * @param slot a slot not in use by this list, kept by the entry until it is removed
+     * @param entry the entry to insert
+     * @return the new version of the list
+     */
+    public PersistentVocabList insert(int index, int slot, Entry entry) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index is out of bounds");
+        }
+        Object[] root = slots;
+        int rootShift = shift;
+        // add levels on top until the slot fits
+        while (slot >>> rootShift >= WIDTH) {
+            Object[] parent = new Object[WIDTH];
+            parent[0] = root;
+            root = parent;
+            rootShift += BITS;
+        }
+        return new PersistentVocabList(insertAt(order, index, slot), store(root, rootShift, slot, entry), rootShift);
+    }
+
+    /**
+     * Returns a list without the entry at the specified index. Its slot is free for reuse afterwards.
+     *
+     * @param index the index of the entry to remove
+     * @return the new version of the list
+     */
+    public PersistentVocabList remove(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index is out of bounds");
+        }
+        int slot = slotAt(order, index);
+        return new PersistentVocabList(removeAt(order, index), store(slots, shift, slot, null), shift);
+    }
+
+    /**
+     * Returns a list with the entry in the given slot replaced, at the same position.
+     *
+     * @param slot the slot of the entry to replace
+     * @param entry the new entry
+     * @return the new version of the list
+     * @throws IllegalArgumentException if the slot is not in use
+     */
+    public PersistentVocabList replace(int slot, Entry entry) {
+        if (entry(slot) == null) {
+            throw new IllegalArgumentException("Slot " + slot + " is not in use");
+        }
+        return new PersistentVocabList(order, store(slots, shift, slot, entry), shift);
+    }
+
+    /**
+     * Returns an iterator over the topic entries in list order.
+     *
+     * @return an iterator over the entries of this version
+     */
+    @Override
+    public Iterator<Entry> iterator() {
+        return new Iterator<Entry>() {
+            private final ArrayDeque<Node> stack = new ArrayDeque<>();
+
+            {
+                pushLeft(order);
+            }
+
+            private void pushLeft(Node node) {
+                for (; node != null; node = node.left) {
+                    stack.push(node);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !stack.isEmpty();
+            }
+
+            @Override
+            public Entry next() {
+                if (stack.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node node = stack.pop();
+                pushLeft(node.right);
+                return entry(node.slot);
+            }
+        };
+    }
+
+    /**
+     * Returns a spliterator over the entries in list order, backed by an array so it splits into even halves.
+     *
+     * @return a spliterator over the entries of this version
+     */
+    @Override
+    public Spliterator<Entry> spliterator() {
+        Entry[] entries = new Entry[size()];
+        int index = 0;
+        for (Entry entry : this) {
+            entries[index++] = entry;
+        }
+        return Spliterators.spliterator(entries, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
+
+    /**
+     * Returns a sequential stream over the entries in list order.
+     *
+     * @return a stream of the entries
+     */
+    public Stream<Entry> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Returns a parallel stream over the entries. Since a version never changes, the stream needs no care
+     * about concurrent edits.
+     *
+     * @return a parallel stream of the entries
+     */
+    public Stream<Entry> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Copies the path to a slot in the trie, with the entry stored at its end.
+     */
+    private static Object[] store(Object[] level, int levelShift, int slot, Entry entry) {
+        Object[] copy = level == null ? new Object[WIDTH] : Arrays.copyOf(level, WIDTH);
+        int i = (slot >>> levelShift) & MASK;
+        if (levelShift == 0) {
+            copy[i] = entry;
+        } else {
+            copy[i] = store((Object[]) copy[i], levelShift - BITS, slot, entry);
+        }
+        return copy;
+    }
+
+    private static int slotAt(Node node, int index) {
+        while (true) {
+            int left = size(node.left);
+            if (index < left) {
+                node = node.left;
+            } else if (index > left) {
+                index -= left + 1;
+                node = node.right;
+            } else {
+                return node.slot;
+            }
+        }
+    }
+
+    private static Node insertAt(Node node, int index, int slot) {
+        if (node == null) {
+            return new Node(slot, null, null);
+        }
+        int left = size(node.left);
+        if (index <= left) {
+            return balance(node, insertAt(node.left, index, slot), node.right);
+        }
+        return balance(node, node.left, insertAt(node.right, index - left - 1, slot));
+    }
+
+    private static Node removeAt(Node node, int index) {
+        int left = size(node.left);
+        if (index < left) {
+            return balance(node, removeAt(node.left, index), node.right);
+        }
+        if (index > left) {
+            return balance(node, node.left, removeAt(node.right, index - left - 1));
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        // replace the node by its successor
+        Node successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor, node.left, removeAt(node.right, 0));
+    }
+
+    /**
+     * Creates a node holding the slot of {@code top} with new children, applying the AVL rotations
+     * needed to keep it balanced.
+     */
+    private static Node balance(Node top, Node left, Node right) {
+        int diff = height(left) - height(right);
+        if (diff > 1) {
+            if (height(left.left) < height(left.right)) {
+                left = rotateLeft(left, left.left, left.right);
+            }
+            return rotateRight(top, left, right);
+        }
+        if (diff < -1) {
+            if (height(right.right) < height(right.left)) {
+                right = rotateRight(right, right.left, right.right);
+            }
+            return rotateLeft(top, left, right);
+        }
+        return new Node(top.slot, left, right);
+    }
+
+    private static Node rotateRight(Node top, Node left, Node right) {
+        return new Node(left.slot, left.left, new Node(top.slot, left.right, right));
+    }
+
+    private static Node rotateLeft(Node top, Node left, Node right) {
+        return new Node(right.slot, new Node(top.slot, left, right.left), right.right);
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+}
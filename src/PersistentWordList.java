@@ -0,0 +1,263 @@
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable, sorted list of words with the same contents and order as a {@link WordList}, using the
+ * same precomputed {@link WordOrder} keys.
+ * <p>
+ * The words are kept in a persistent AVL tree. Adding or deleting a word copies only the nodes on the path
+ * to it and shares every other node with the previous version, so each change costs O(log n) time and memory
+ * and old versions stay valid for anyone still reading them. A word added several times is stored once
+ * with a count, like the duplicate nodes of a {@link WordList}.
+ * </p>
+ */
+final class PersistentWordList implements Iterable<String> {
+
+    /**
+     * The empty list.
+     */
+    static final PersistentWordList EMPTY = new PersistentWordList(null);
+
+    /**
+     * An immutable tree node. Every field is fixed at construction, so nodes can be shared between versions.
+     */
+    private static final class Node {
+        final String word;
+        final byte[] key;
+        final int count;
+        final Node left;
+        final Node right;
+        final int height;
+        final int size;
+
+        Node(String word, byte[] key, int count, Node left, Node right) {
+            this.word = word;
+            this.key = key;
+            this.count = count;
+            this.left = left;
+            this.right = right;
+            this.height = 1 + Math.max(height(left), height(right));
+            this.size = count + size(left) + size(right);
+        }
+    }
+
+    private final Node root;
+
+    private PersistentWordList(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Returns the number of words, counting duplicates.
+     *
+     * @return the size of the list
+     */
+    public int size() {
+        return size(root);
+    }
+
+    /**
+     * Determines if the list contains the specified word.
+     *
+     * @param word the word to search for
+     * @return {@code true} if the word is in the list
+     */
+    public boolean contains(String word) {
+        byte[] key = WordOrder.key(word);
+        Node node = root;
+        while (node != null) {
+            int cmp = WordOrder.compare(key, word, node.key, node.word);
+            if (cmp == 0) {
+                return true;
+            }
+            node = cmp < 0 ? node.left : node.right;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a list that also holds the given word. The word is expected in the form it is stored in,
+     * as reported by {@link VocabListener#wordAdded(Vocab, String)}.
+     *
+     * @param word the word to add
+     * @return the new version of the list
+     */
+    public PersistentWordList add(String word) {
+        return new PersistentWordList(insert(root, word, WordOrder.key(word)));
+    }
+
+    /**
+     * Returns a list with one occurrence of the given word removed.
+     *
+     * @param word the word to delete
+     * @return the new version of the list, or this list if the word is not in it
+     */
+    public PersistentWordList delete(String word) {
+        if (!contains(word)) {
+            return this;
+        }
+        return new PersistentWordList(remove(root, word, WordOrder.key(word)));
+    }
+
+    /**
+     * Builds the persistent version of a mutable word list.
+     *
+     * @param words the list to copy
+     * @return a persistent list with the same words
+     */
+    public static PersistentWordList of(WordList words) {
+        PersistentWordList list = EMPTY;
+        for (String word : words) {
+            list = list.add(word);
+        }
+        return list;
+    }
+
+    /**
+     * Returns an iterator over the words in sorted order, repeating duplicates.
+     *
+     * @return an iterator over the words of this version
+     */
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private final ArrayDeque<Node> stack = new ArrayDeque<>();
+            private Node current;
+            private int remaining;
+
+            {
+                pushLeft(root);
+            }
+
+            private void pushLeft(Node node) {
+                for (; node != null; node = node.left) {
+                    stack.push(node);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return remaining > 0 || !stack.isEmpty();
+            }
+
+            @Override
+            public String next() {
+                if (remaining == 0) {
+                    if (stack.isEmpty()) {
+                        throw new NoSuchElementException();
+                    }
+                    current = stack.pop();
+                    remaining = current.count;
+                    pushLeft(current.right);
+                }
+                remaining--;
+                return current.word;
+            }
+        };
+    }
+
+    /**
+     * Passes every word with its precomputed key to an action, in sorted order, repeating duplicates.
+     *
+     * @param action receives each word and its key, which is {@code null} in the default binary order
+     */
+    public void forEachKeyed(BiConsumer<String, byte[]> action) {
+        forEachKeyed(root, action);
+    }
+
+    private static void forEachKeyed(Node node, BiConsumer<String, byte[]> action) {
+        if (node == null) {
+            return;
+        }
+        forEachKeyed(node.left, action);
+        for (int i = 0; i < node.count; i++) {
+            action.accept(node.word, node.key);
+        }
+        forEachKeyed(node.right, action);
+    }
+
+    private static Node insert(Node node, String word, byte[] key) {
+        if (node == null) {
+            return new Node(word, key, 1, null, null);
+        }
+        int cmp = WordOrder.compare(key, word, node.key, node.word);
+        if (cmp == 0) {
+            return new Node(node.word, node.key, node.count + 1, node.left, node.right);
+        }
+        if (cmp < 0) {
+            return balance(node, insert(node.left, word, key), node.right);
+        }
+        return balance(node, node.left, insert(node.right, word, key));
+    }
+
+    private static Node remove(Node node, String word, byte[] key) {
+        int cmp = WordOrder.compare(key, word, node.key, node.word);
+        if (cmp < 0) {
+            return balance(node, remove(node.left, word, key), node.right);
+        }
+        if (cmp > 0) {
+            return balance(node, node.left, remove(node.right, word, key));
+        }
+        if (node.count > 1) {
+            return new Node(node.word, node.key, node.count - 1, node.left, node.right);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        // replace the node by its successor
+        Node successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor, node.left, removeMin(node.right));
+    }
+
+    private static Node removeMin(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node, removeMin(node.left), node.right);
+    }
+
+    /**
+     * Creates a node holding the word of {@code top} with new children, applying the AVL rotations
+     * needed to keep it balanced.
+     */
+    private static Node balance(Node top, Node left, Node right) {
+        int diff = height(left) - height(right);
+        if (diff > 1) {
+            if (height(left.left) < height(left.right)) {
+                left = rotateLeft(left, left.left, left.right);
+            }
+            return rotateRight(top, left, right);
+        }
+        if (diff < -1) {
+            if (height(right.right) < height(right.left)) {
+                right = rotateRight(right, right.left, right.right);
+            }
+            return rotateLeft(top, left, right);
+        }
+        return new Node(top.word, top.key, top.count, left, right);
+    }
+
+    private static Node rotateRight(Node top, Node left, Node right) {
+        return new Node(left.word, left.key, left.count, left.left, new Node(top.word, top.key, top.count, left.right, right));
+    }
+
+    private static Node rotateLeft(Node top, Node left, Node right) {
+        return new Node(right.word, right.key, right.count, new Node(top.word, top.key, top.count, left, right.left), right.right);
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+}
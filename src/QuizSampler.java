@@ -0,0 +1,258 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+/**
+ * Draws random words in constant time for the quiz, from one topic or across all topics.
+ * <p>
+ * Every topic's words are mirrored in an array, with a map from each word to its positions so a deleted word
+ * can be swapped with the last element and removed in constant time. A draw across topics first picks a topic
+ * with probability proportional to its weight times its number of words, using Vose's alias table, and then
+ * picks a word uniformly from that topic's array. With the default weight of 1 every word is equally likely.
+ * </p>
+ * <p>
+ * The arrays are updated on every change. The alias table has one slot per topic and is built for twice the
+ * number of words each topic had at the time, so words can come and go without rebuilding it: a draw picks a
+ * topic by its weight times that capacity, then a position below the capacity, and starts over if the
+ * position is past the topic's last word. This keeps every word exactly as likely as its topic's weight says.
+ * The table is rebuilt, in time linear in the number of topics, only when a topic is added, removed or
+ * reweighted, when a topic outgrows its capacity, or when deletions leave less than a quarter of the
+ * capacity in use; a draw therefore starts over fewer than four times on average, and a rebuild happens at
+ * most once per doubling or halving of the words.
+ * </p>
+ */
+class QuizSampler implements VocabListener {
+
+    /**
+     * The words of one topic, in an array for constant time sampling.
+     */
+    private static final class Pool {
+        final Vocab vocab;
+        final ArrayList<String> words = new ArrayList<>();
+        // positions of each word in the array, several for a word that appears more than once
+        final HashMap<String, ArrayList<Integer>> positions = new HashMap<>();
+        double weight = 1;
+        // the number of words the alias table was built for
+        int capacity;
+
+        Pool(Vocab vocab) {
+            this.vocab = vocab;
+        }
+
+        void add(String word) {
+            positions.computeIfAbsent(word, w -> new ArrayList<>(1)).add(words.size());
+            words.add(word);
+        }
+
+        boolean remove(String word) {
+            ArrayList<Integer> at = positions.get(word);
+            if (at == null) {
+                return false;
+            }
+            int index = at.remove(at.size() - 1);
+            if (at.isEmpty()) {
+                positions.remove(word);
+            }
+            // move the last word into the hole
+            int last = words.size() - 1;
+            String moved = words.remove(last);
+            if (index != last) {
+                words.set(index, moved);
+                ArrayList<Integer> movedAt = positions.get(moved);
+                movedAt.set(movedAt.indexOf(last), index);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A drawn word together with the topic it was drawn from.
+     */
+    static final class Draw {
+        private final Vocab vocab;
+        private final String word;
+
+        private Draw(Vocab vocab, String word) {
+            this.vocab = vocab;
+            this.word = word;
+        }
+
+        /**
+         * Returns the topic the word was drawn from.
+         *
+         * @return the vocabulary
+         */
+        public Vocab getVocab() {
+            return vocab;
+        }
+
+        /**
+         * Returns the drawn word.
+         *
+         * @return the word
+         */
+        public String getWord() {
+            return word;
+        }
+    }
+
+    private final IdentityHashMap<Vocab, Pool> pools = new IdentityHashMap<>();
+    private final ArrayList<Pool> order = new ArrayList<>();
+
+    // alias table over 'order', built for the pools' capacities, null when it must be rebuilt
+    private double[] probability;
+    private int[] alias;
+    // the sum of weight times capacity, which the table covers, and of weight times the words really there
+    private double capacityWeight;
+    private double liveWeight;
+
+    /**
+     * Sets the weight of a topic in draws across all topics. A topic's chance is proportional to its weight
+     * times its number of words.
+     *
+     * @param vocab a topic in the list
+     * @param weight a weight of zero or more
+     */
+    public void setWeight(Vocab vocab, double weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weights cannot be negative");
+        }
+        Pool pool = pools.get(vocab);
+        if (pool != null) {
+            pool.weight = weight;
+            probability = null;
+        }
+    }
+
+    /**
+     * Draws a word uniformly from one topic.
+     *
+     * @param vocab a topic in the list
+     * @param random the source of randomness
+     * @return the drawn word, or {@code null} if the topic has no words
+     */
+    public String draw(Vocab vocab, Random random) {
+        Pool pool = pools.get(vocab);
+        if (pool == null || pool.words.isEmpty()) {
+            return null;
+        }
+        return pool.words.get(random.nextInt(pool.words.size()));
+    }
+
+    /**
+     * Draws a word across all topics, choosing the topic by weight.
+     *
+     * @param random the source of randomness
+     * @return the drawn word and its topic, or {@code null} if no topic with a positive weight has words
+     */
+    public Draw draw(Random random) {
+        if (probability == null || liveWeight * 4 < capacityWeight) {
+            buildAliasTable();
+        }
+        if (capacityWeight == 0) {
+            return null;
+        }
+        while (true) {
+            int slot = random.nextInt(order.size());
+            Pool pool = order.get(random.nextDouble() < probability[slot] ? slot : alias[slot]);
+            // a position past the words left in the topic is spare capacity, draw again
+            if (pool.capacity > 0) {
+                int position = random.nextInt(pool.capacity);
+                if (position < pool.words.size()) {
+                    return new Draw(pool.vocab, pool.words.get(position));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void topicAdded(int index, Vocab vocab) {
+        Pool pool = new Pool(vocab);
+        for (String word : vocab.getWords()) {
+            pool.add(word);
+        }
+        pools.put(vocab, pool);
+        order.add(pool);
+        probability = null;
+    }
+
+    @Override
+    public void topicRemoved(int index, Vocab vocab) {
+        order.remove(pools.remove(vocab));
+        probability = null;
+    }
+
+    @Override
+    public void wordAdded(Vocab vocab, String word) {
+        Pool pool = pools.get(vocab);
+        pool.add(word);
+        liveWeight += pool.weight;
+        if (pool.words.size() > pool.capacity) {
+            probability = null;
+        }
+    }
+
+    @Override
+    public void wordDeleted(Vocab vocab, String word) {
+        Pool pool = pools.get(vocab);
+        if (pool.remove(word)) {
+            liveWeight -= pool.weight;
+        }
+    }
+
+    /**
+     * Builds the alias table with Vose's method in time linear in the number of topics, giving every topic
+     * room for twice its current words.
+     */
+    private void buildAliasTable() {
+        int n = order.size();
+        probability = new double[n];
+        alias = new int[n];
+        double[] scaled = new double[n];
+        capacityWeight = 0;
+        liveWeight = 0;
+        for (int i = 0; i < n; i++) {
+            Pool pool = order.get(i);
+            pool.capacity = 2 * pool.words.size();
+            scaled[i] = pool.weight * pool.capacity;
+            capacityWeight += scaled[i];
+            liveWeight += pool.weight * pool.words.size();
+        }
+        if (capacityWeight == 0) {
+            return;
+        }
+
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = scaled[i] * n / capacityWeight;
+            if (scaled[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallCount++] = more;
+            } else {
+                large[largeCount++] = more;
+            }
+        }
+        // whatever is left is 1 up to rounding errors
+        while (largeCount > 0) {
+            probability[large[--largeCount]] = 1;
+        }
+        while (smallCount > 0) {
+            probability[small[--smallCount]] = 1;
+        }
+    }
+}
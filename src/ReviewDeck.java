@@ -0,0 +1,205 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+
+/**
+ * Connects a {@link ReviewScheduler} to a {@link VocabList}: every distinct word of every topic is one card.
+ * <p>
+ * The deck listens to the list, so a card is created, due immediately, when a word first appears in a topic
+ * and dropped when the last copy of the word leaves the topic. The review state is saved next to the
+ * vocabulary file, in a file with the same name plus {@code .srs}, one tab separated line per card; on load it
+ * is matched back to the cards by topic name and word.
+ * </p>
+ */
+class ReviewDeck implements VocabListener {
+
+    /**
+     * The extension added to a vocabulary file name to get the name of its review state file.
+     */
+    static final String EXTENSION = ".srs";
+
+    private final ReviewScheduler scheduler = new ReviewScheduler();
+    private final IdentityHashMap<Vocab, HashMap<String, Integer>> cards = new IdentityHashMap<>();
+    // reverse mapping, indexed by card id
+    private final ArrayList<Vocab> vocabOf = new ArrayList<>();
+    private final ArrayList<String> wordOf = new ArrayList<>();
+
+    /**
+     * Returns the scheduler holding the review state of the cards.
+     *
+     * @return the scheduler
+     */
+    public ReviewScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Returns the card that is due first at the given time.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @return the id of a due card, or -1 if no card is due
+     */
+    public int nextDue(long now) {
+        return scheduler.nextDue(now);
+    }
+
+    /**
+     * Returns the topic of a card.
+     *
+     * @param id the card
+     * @return the vocabulary holding the word
+     */
+    public Vocab getVocab(int id) {
+        return vocabOf.get(id);
+    }
+
+    /**
+     * Returns the word of a card.
+     *
+     * @param id the card
+     * @return the word
+     */
+    public String getWord(int id) {
+        return wordOf.get(id);
+    }
+
+    /**
+     * Records a review of a card and reschedules it.
+     *
+     * @param id the reviewed card
+     * @param grade how well the word was remembered, from 0 to 5
+     * @param now the time of the review in milliseconds since the epoch
+     */
+    public void review(int id, int grade, long now) {
+        scheduler.review(id, grade, now);
+    }
+
+    @Override
+    public void topicAdded(int index, Vocab vocab) {
+        for (String word : vocab.getWords()) {
+            wordAdded(vocab, word);
+        }
+    }
+
+    @Override
+    public void topicRemoved(int index, Vocab vocab) {
+        HashMap<String, Integer> ids = cards.remove(vocab);
+        if (ids != null) {
+            for (int id : ids.values()) {
+                release(id);
+            }
+        }
+    }
+
+    @Override
+    public void wordAdded(Vocab vocab, String word) {
+        HashMap<String, Integer> ids = cards.computeIfAbsent(vocab, v -> new HashMap<>());
+        if (!ids.containsKey(word)) {
+            int id = scheduler.addCard(System.currentTimeMillis());
+            ids.put(word, id);
+            bind(id, vocab, word);
+        }
+    }
+
+    @Override
+    public void wordDeleted(Vocab vocab, String word) {
+        HashMap<String, Integer> ids = cards.get(vocab);
+        // a word added twice keeps its card until the last copy is gone
+        if (ids != null && ids.containsKey(word) && !vocab.getWords().contains(word)) {
+            release(ids.remove(word));
+        }
+    }
+
+    /**
+     * Writes the review state of every card to the state file of a vocabulary file.
+     *
+     * @param vocabularyFile the name of the vocabulary file the state belongs to
+     * @throws IOException if the file cannot be written
+     */
+    public void save(String vocabularyFile) throws IOException {
+        PrintWriter pw = VocabFiles.openWriter(vocabularyFile + EXTENSION);
+        for (int id = 0; id < vocabOf.size(); id++) {
+            if (vocabOf.get(id) != null) {
+                pw.println(vocabOf.get(id).getTopic() + "\t" + wordOf.get(id) + "\t" + scheduler.getDue(id) + "\t"
+                        + scheduler.getInterval(id) + "\t" + scheduler.getEase(id) + "\t" + scheduler.getRepetitions(id));
+            }
+        }
+        pw.close();
+        if (pw.checkError()) {
+            throw new IOException("Could not write " + vocabularyFile + EXTENSION);
+        }
+    }
+
+    /**
+     * Restores the review state saved next to a vocabulary file, for the cards of the given list whose
+     * topic, ignoring case, and word match. Cards without saved state stay as they are.
+     *
+     * @param vocabularyFile the name of the vocabulary file the state belongs to
+     * @param vocabList the list the cards were created from
+     * @return the number of cards restored, or 0 if there is no state file
+     * @throws IOException if the state file cannot be read
+     */
+    public int load(String vocabularyFile, VocabList vocabList) throws IOException {
+        File stateFile = new File(vocabularyFile + EXTENSION);
+        if (!stateFile.isFile()) {
+            return 0;
+        }
+        // topics are matched ignoring case, as VocabList.indexOfTopic does, so a re-cased topic keeps its cards
+        HashMap<String, Vocab> byTopic = new HashMap<>();
+        for (Vocab vocab : vocabList) {
+            byTopic.putIfAbsent(vocab.getTopic().toLowerCase(Locale.ROOT), vocab);
+        }
+
+        int restored = 0;
+        try (BufferedReader reader = VocabFiles.openReader(stateFile.getPath())) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 6) {
+                    continue;
+                }
+                Vocab vocab = byTopic.get(fields[0].toLowerCase(Locale.ROOT));
+                HashMap<String, Integer> ids = vocab == null ? null : cards.get(vocab);
+                Integer id = ids == null ? null : ids.get(fields[1]);
+                if (id == null) {
+                    continue;
+                }
+                try {
+                    long due = Long.parseLong(fields[2]);
+                    int interval = Integer.parseInt(fields[3]);
+                    float ease = Float.parseFloat(fields[4]);
+                    int repetitions = Integer.parseInt(fields[5]);
+                    // replace the fresh card by one carrying the saved state
+                    release(id);
+                    int restoredId = scheduler.addCard(due, interval, ease, repetitions);
+                    ids.put(fields[1], restoredId);
+                    bind(restoredId, vocab, fields[1]);
+                    restored++;
+                } catch (NumberFormatException e) {
+                    // skip damaged lines, the card keeps its fresh state
+                }
+            }
+        }
+        return restored;
+    }
+
+    private void bind(int id, Vocab vocab, String word) {
+        while (vocabOf.size() <= id) {
+            vocabOf.add(null);
+            wordOf.add(null);
+        }
+        vocabOf.set(id, vocab);
+        wordOf.set(id, word);
+    }
+
+    private void release(int id) {
+        scheduler.removeCard(id);
+        vocabOf.set(id, null);
+        wordOf.set(id, null);
+    }
+}
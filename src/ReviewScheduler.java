@@ -0,0 +1,284 @@
+import java.util.Arrays;
+
+/**
+ * Schedules spaced-repetition reviews for a large number of cards.
+ * <p>
+ * Cards are identified by small integer ids and their state (due time, interval, ease factor and number of
+ * successful reviews in a row) is kept in parallel primitive arrays, so ten million cards fit in a few hundred
+ * megabytes. An indexed binary min-heap orders the cards by due time and remembers where each card sits, so
+ * finding the next due card is O(1) and rescheduling or removing any card is O(log n). Reviews follow the SM-2
+ * algorithm: answers graded 3 to 5 grow the interval by the ease factor, lower grades start the card over.
+ * </p>
+ */
+class ReviewScheduler {
+
+    /**
+     * One day in milliseconds, the unit of review intervals.
+     */
+    static final long DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * The ease factor of a new card.
+     */
+    static final float INITIAL_EASE = 2.5f;
+
+    private static final float MIN_EASE = 1.3f;
+
+    private long[] due = new long[16];
+    private int[] interval = new int[16];
+    private float[] ease = new float[16];
+    private int[] repetitions = new int[16];
+    // position of each card in the heap, or -1 for a free id
+    private int[] heapIndex = new int[16];
+    private int[] heap = new int[16];
+    private int size;
+
+    // ids of removed cards, reused before new ids are handed out
+    private int[] free = new int[16];
+    private int freeCount;
+    private int nextId;
+
+    /**
+     * Returns the number of scheduled cards.
+     *
+     * @return the number of cards
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a new card.
+     *
+     * @param dueTime when the card is first due, in milliseconds since the epoch
+     * @return the id of the card
+     */
+    public int addCard(long dueTime) {
+        return addCard(dueTime, 0, INITIAL_EASE, 0);
+    }
+
+    /**
+     * Adds a card with a previously saved state.
+     *
+     * @param dueTime when the card is due, in milliseconds since the epoch
+     * @param days the current review interval in days
+     * @param easeFactor the current ease factor
+     * @param reps the number of successful reviews in a row
+     * @return the id of the card
+     */
+    public int addCard(long dueTime, int days, float easeFactor, int reps) {
+        int id;
+        if (freeCount > 0) {
+            id = free[--freeCount];
+        } else {
+            id = nextId++;
+            ensureCapacity(nextId);
+        }
+        due[id] = dueTime;
+        interval[id] = days;
+        ease[id] = easeFactor;
+        repetitions[id] = reps;
+        heap[size] = id;
+        heapIndex[id] = size;
+        size++;
+        siftUp(size - 1);
+        return id;
+    }
+
+    /**
+     * Removes a card. Its id may be handed out again by a later {@link #addCard(long)}.
+     *
+     * @param id the card to remove
+     */
+    public void removeCard(int id) {
+        if (!isCard(id)) {
+            return;
+        }
+        int position = heapIndex[id];
+        size--;
+        if (position != size) {
+            // fill the hole with the last card and restore the heap order around it
+            int last = heap[size];
+            move(last, position);
+            siftDown(position);
+            siftUp(heapIndex[last]);
+        }
+        heapIndex[id] = -1;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCount++] = id;
+    }
+
+    /**
+     * Returns the card that is due first, whether or not it is due yet.
+     *
+     * @return the id of the card, or -1 if there are no cards
+     */
+    public int peek() {
+        return size == 0 ? -1 : heap[0];
+    }
+
+    /**
+     * Returns the card that is due first if it is due at the given time.
+     *
+     * @param now the current time in milliseconds since the epoch
+     * @return the id of a due card, or -1 if no card is due
+     */
+    public int nextDue(long now) {
+        return size > 0 && due[heap[0]] <= now ? heap[0] : -1;
+    }
+
+    /**
+     * Records a review of a card and reschedules it with SM-2.
+     *
+     * @param id the reviewed card
+     * @param grade how well the card was remembered, from 0 (not at all) to 5 (perfectly)
+     * @param now the time of the review in milliseconds since the epoch
+     * @throws IllegalArgumentException if the grade is out of range or the card was removed
+     */
+    public void review(int id, int grade, long now) {
+        if (grade < 0 || grade > 5) {
+            throw new IllegalArgumentException("Grades go from 0 to 5");
+        }
+        requireCard(id);
+        if (grade < 3) {
+            repetitions[id] = 0;
+            interval[id] = 1;
+        } else {
+            repetitions[id]++;
+            if (repetitions[id] == 1) {
+                interval[id] = 1;
+            } else if (repetitions[id] == 2) {
+                interval[id] = 6;
+            } else {
+                interval[id] = (int) Math.min(Integer.MAX_VALUE, Math.round(interval[id] * (double) ease[id]));
+            }
+        }
+        int miss = 5 - grade;
+        ease[id] = Math.max(MIN_EASE, ease[id] + 0.1f - miss * (0.08f + miss * 0.02f));
+        reschedule(id, now + interval[id] * DAY);
+    }
+
+    /**
+     * Moves a card to a new due time.
+     *
+     * @param id the card
+     * @param dueTime the new due time in milliseconds since the epoch
+     * @throws IllegalArgumentException if the card was removed
+     */
+    public void reschedule(int id, long dueTime) {
+        requireCard(id);
+        long old = due[id];
+        due[id] = dueTime;
+        if (dueTime < old) {
+            siftUp(heapIndex[id]);
+        } else {
+            siftDown(heapIndex[id]);
+        }
+    }
+
+    /**
+     * Returns when a card is due.
+     *
+     * @param id the card
+     * @return the due time in milliseconds since the epoch
+     */
+    public long getDue(int id) {
+        return due[id];
+    }
+
+    /**
+     * Returns the current review interval of a card.
+     *
+     * @param id the card
+     * @return the interval in days
+     */
+    public int getInterval(int id) {
+        return interval[id];
+    }
+
+    /**
+     * Returns the ease factor of a card.
+     *
+     * @param id the card
+     * @return the ease factor
+     */
+    public float getEase(int id) {
+        return ease[id];
+    }
+
+    /**
+     * Returns the number of successful reviews in a row of a card.
+     *
+     * @param id the card
+     * @return the number of repetitions
+     */
+    public int getRepetitions(int id) {
+        return repetitions[id];
+    }
+
+    /**
+     * Tells whether an id names a card in the scheduler. Ids never handed out and ids of removed cards do not.
+     */
+    private boolean isCard(int id) {
+        return id >= 0 && id < nextId && heapIndex[id] >= 0;
+    }
+
+    /**
+     * Checks that an id names a card in the scheduler; a removed card has no heap position to sift from.
+     */
+    private void requireCard(int id) {
+        if (!isCard(id)) {
+            throw new IllegalArgumentException("There is no card " + id);
+        }
+    }
+
+    private void siftUp(int position) {
+        int id = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (due[heap[parent]] <= due[id]) {
+                break;
+            }
+            move(heap[parent], position);
+            position = parent;
+        }
+        move(id, position);
+    }
+
+    private void siftDown(int position) {
+        int id = heap[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && due[heap[child + 1]] < due[heap[child]]) {
+                child++;
+            }
+            if (due[id] <= due[heap[child]]) {
+                break;
+            }
+            move(heap[child], position);
+            position = child;
+        }
+        move(id, position);
+    }
+
+    private void move(int id, int position) {
+        heap[position] = id;
+        heapIndex[id] = position;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= due.length) {
+            return;
+        }
+        int length = Math.max(capacity, due.length * 2);
+        due = Arrays.copyOf(due, length);
+        interval = Arrays.copyOf(interval, length);
+        ease = Arrays.copyOf(ease, length);
+        repetitions = Arrays.copyOf(repetitions, length);
+        heapIndex = Arrays.copyOf(heapIndex, length);
+        heap = Arrays.copyOf(heap, length);
+    }
+}
@@ -0,0 +1,64 @@
+import java.util.Random;
+
+/**
+ * Measures how fast a {@link ReviewScheduler} serves due cards when it holds a very large deck.
+ * <p>
+ * The deck is filled with cards due at random times over the next year, then due cards are taken and
+ * reviewed with random grades, each review moving the card back into the queue. Run it with
+ * {@code java ReviewSchedulerBenchmark [cards] [reviews]}; the defaults are 10,000,000 cards and
+ * 5,000,000 reviews.
+ * </p>
+ */
+public class ReviewSchedulerBenchmark {
+
+    public static void main(String[] args) {
+        int cards = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int reviews = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        Random random = new Random(42);
+        long start = 0;
+        long year = 365 * ReviewScheduler.DAY;
+
+        ReviewScheduler scheduler = new ReviewScheduler();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < cards; i++) {
+            scheduler.addCard(start + (long) (random.nextDouble() * year));
+        }
+        long t1 = System.nanoTime();
+        report("add", cards, t1 - t0);
+
+        // advance the clock so that every card is due, then review as many as asked
+        long now = start + year;
+        int done = 0;
+        long checksum = 0;
+        t0 = System.nanoTime();
+        while (done < reviews) {
+            int id = scheduler.nextDue(now);
+            if (id < 0) {
+                now += ReviewScheduler.DAY;
+                continue;
+            }
+            scheduler.review(id, random.nextInt(6), now);
+            checksum += id;
+            done++;
+        }
+        t1 = System.nanoTime();
+        report("next due + review", reviews, t1 - t0);
+
+        t0 = System.nanoTime();
+        for (int i = 0; i < reviews; i++) {
+            int id = random.nextInt(cards);
+            scheduler.reschedule(id, start + (long) (random.nextDouble() * year));
+        }
+        t1 = System.nanoTime();
+        report("reschedule", reviews, t1 - t0);
+
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%,d cards, heap in use %,d MB (checksum %d)%n", scheduler.size(),
+                (runtime.totalMemory() - runtime.freeMemory()) >> 20, checksum);
+    }
+
+    private static void report(String operation, int count, long nanos) {
+        System.out.printf("%-20s %,12d ops in %,8d ms  %,14.0f ops/s%n", operation, count, nanos / 1_000_000,
+                count * 1e9 / nanos);
+    }
+}
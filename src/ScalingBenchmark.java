@@ -0,0 +1,232 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
+/**
+ * Checks that the main operations keep their expected complexity as vocabularies grow.
+ * <p>
+ * Vocabularies of doubling size are made with {@link VocabGenerator}, and loading, saving, searching topics for
+ * words and listing the words starting with a letter are timed on each, the best of several runs. The operations
+ * run through the same code as the menu: loading fills a list watched by the listeners {@link Driver} registers,
+ * and the others call Driver's search, prefix and save paths, both on a published snapshot and while frozen.
+ * The growth exponent is the slope of a least-squares line through log time against log size, and is compared
+ * with the expected one; an exponent of 1 means the time doubles when the size doubles. Two series are run, one
+ * adding topics and one making each topic larger, as the two stress different parts of the lists.
+ * </p>
+ * <p>
+ * Usage: {@code java ScalingBenchmark [--steps=N] [--tolerance=T]}. The program prints a table and exits
+ * with status 1 if an operation grows faster than expected by more than the tolerance, 0.35 by default.
+ * </p>
+ */
+public class ScalingBenchmark {
+
+    private static final int RUNS = 5;
+    private static final int WARM_UPS = 5;
+    // words looked up by each search, half of them present
+    private static final int PROBES = 200;
+
+    // keeps the results alive so the work is not optimised away
+    private static long sink;
+
+    /**
+     * The state an operation works on, loaded before the operation is timed.
+     */
+    private static final class Fixture {
+        final String text;
+        final PersistentVocabList snapshot;
+        final FrozenVocab frozen;
+        final ArrayList<String> probes;
+
+        Fixture(String text, PersistentVocabList snapshot, FrozenVocab frozen, ArrayList<String> probes) {
+            this.text = text;
+            this.snapshot = snapshot;
+            this.frozen = frozen;
+            this.probes = probes;
+        }
+    }
+
+    private interface Operation {
+        void run(Fixture fixture) throws IOException;
+    }
+
+    private static final String[] NAMES = {"load", "save", "save frozen", "search", "search frozen",
+        "starting with", "start. frozen"};
+    private static final double[] EXPECTED = {1, 1, 1, 1, 1, 1, 1};
+    private static final Operation[] OPERATIONS = {
+        fixture -> load(fixture.text),
+        fixture -> Driver.write(fixture.snapshot, null, new PrintWriter(Writer.nullWriter())),
+        fixture -> Driver.write(null, fixture.frozen, new PrintWriter(Writer.nullWriter())),
+        fixture -> {
+            for (String probe : fixture.probes) {
+                sink += Driver.findInTopics(fixture.snapshot, probe).size();
+            }
+        },
+        fixture -> {
+            for (String probe : fixture.probes) {
+                sink += Driver.findInTopics(fixture.frozen, probe).length;
+            }
+        },
+        fixture -> {
+            for (char letter = 'a'; letter <= 'z'; letter++) {
+                sink += Driver.wordsStartingWith(fixture.snapshot, letter).size();
+            }
+        },
+        fixture -> {
+            for (char letter = 'a'; letter <= 'z'; letter++) {
+                sink += Driver.wordsStartingWith(fixture.frozen, letter).size();
+            }
+        },
+    };
+
+    public static void main(String[] args) throws IOException {
+        int steps = 5;
+        double tolerance = 0.35;
+        for (String arg : args) {
+            if (arg.startsWith("--steps=")) {
+                steps = Integer.parseInt(arg.substring("--steps=".length()));
+            } else if (arg.startsWith("--tolerance=")) {
+                tolerance = Double.parseDouble(arg.substring("--tolerance=".length()));
+            }
+        }
+
+        boolean passed = series("more topics, 200 words each", steps, tolerance, 50, 200, true);
+        passed &= series("10 topics, more words each", steps, tolerance, 10, 1000, false);
+        System.out.println(passed ? "All operations grow as expected." : "Some operations grow faster than expected.");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Times every operation at doubling sizes, growing either the number of topics or their size.
+     *
+     * @return {@code false} if an operation grew faster than expected
+     */
+    private static boolean series(String title, int steps, double tolerance, int topics, int words, boolean growTopics)
+            throws IOException {
+        System.out.println(title + ":");
+        System.out.printf("%-14s", "words");
+        long[][] times = new long[OPERATIONS.length][steps];
+        int[] sizes = new int[steps];
+
+        // untimed passes at the smallest size warm up the JIT
+        String warmUp = generate(topics, words);
+        for (int i = 0; i < WARM_UPS; i++) {
+            measure(warmUp, new long[OPERATIONS.length][1], 0);
+        }
+        for (int step = 0; step < steps; step++) {
+            String text = generate(topics, words);
+            sizes[step] = topics * words;
+            measure(text, times, step);
+            System.out.printf("%12d", sizes[step]);
+            if (growTopics) {
+                topics *= 2;
+            } else {
+                words *= 2;
+            }
+        }
+        System.out.printf("%12s%n", "exponent");
+
+        boolean passed = true;
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            System.out.printf("%-14s", NAMES[op]);
+            for (int step = 0; step < steps; step++) {
+                System.out.printf("%10.2fms", times[op][step] / 1e6);
+            }
+            double exponent = slope(sizes, times[op]);
+            boolean ok = exponent <= EXPECTED[op] + tolerance;
+            passed &= ok;
+            System.out.printf("%12.2f%s%n", exponent, ok ? "" : "  expected " + EXPECTED[op]);
+        }
+        System.out.println();
+        return passed;
+    }
+
+    /**
+     * Fits a line through log time against log size by least squares, so one noisy size does not decide
+     * the exponent on its own.
+     *
+     * @return the slope of the line
+     */
+    private static double slope(int[] sizes, long[] times) {
+        int n = sizes.length;
+        double meanX = 0;
+        double meanY = 0;
+        for (int i = 0; i < n; i++) {
+            meanX += Math.log(sizes[i]) / n;
+            meanY += Math.log(Math.max(1, times[i])) / n;
+        }
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < n; i++) {
+            double dx = Math.log(sizes[i]) - meanX;
+            covariance += dx * (Math.log(Math.max(1, times[i])) - meanY);
+            variance += dx * dx;
+        }
+        return covariance / variance;
+    }
+
+    private static void measure(String text, long[][] times, int step) throws IOException {
+        // the snapshot and the frozen copy never change, so every operation can share them
+        Fixture fixture = prepare(text);
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                // garbage left by the previous run is collected outside the timing
+                System.gc();
+                long start = System.nanoTime();
+                OPERATIONS[op].run(fixture);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            times[op][step] = best;
+        }
+    }
+
+    /**
+     * Loads a vocabulary, takes its published snapshot and a frozen copy, and picks the words to search for.
+     */
+    private static Fixture prepare(String text) throws IOException {
+        VocabList vocabList = new VocabList();
+        SnapshotPublisher snapshots = new SnapshotPublisher();
+        vocabList.addListener(snapshots);
+        VocabFiles.read(new BufferedReader(new StringReader(text)), vocabList);
+
+        ArrayList<String> probes = new ArrayList<>();
+        WordList first = vocabList.getVocabAtIndex(0).getWords();
+        for (int i = 0; i < PROBES / 2; i++) {
+            probes.add(first.getWordAtIndex(i % first.size()));
+            probes.add("zz" + i + "q");
+        }
+        // freezing empties the live list, the snapshot keeps its own copy of the words
+        PersistentVocabList snapshot = snapshots.current();
+        return new Fixture(text, snapshot, FrozenVocab.freeze(vocabList), probes);
+    }
+
+    private static String generate(int topics, int words) {
+        VocabGenerator generator = new VocabGenerator();
+        generator.setTopics(topics);
+        generator.setWordsPerTopic(words);
+        StringWriter text = new StringWriter();
+        generator.write(new PrintWriter(text));
+        return text.toString();
+    }
+
+    /**
+     * Reads the text into a list watched by the same kinds of listeners as the menu's list, so the indexes'
+     * share of loading is timed too.
+     */
+    private static void load(String text) throws IOException {
+        VocabList vocabList = new VocabList();
+        vocabList.addListener(new SubstringIndex());
+        vocabList.addListener(new SnapshotPublisher());
+        vocabList.addListener(new Autocomplete(10));
+        vocabList.addListener(new QuizSampler());
+        vocabList.addListener(new ReviewDeck());
+        vocabList.addListener(new TopicBitmapIndex());
+        vocabList.addListener(new TokenIndex());
+        VocabFiles.read(new BufferedReader(new StringReader(text)), vocabList);
+        sink += vocabList.size();
+    }
+}
@@ -0,0 +1,291 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Saves a {@link VocabList} as a directory with one file per topic plus a manifest that keeps the topic order.
+ * <p>
+ * Each topic file is an ordinary vocabulary file holding a single {@code #topic} section. The store listens to
+ * the list and marks a topic dirty whenever it is added, renamed or has a word added or deleted, so a save
+ * only rewrites the files of dirty topics, in parallel, and then replaces the small manifest. Files of
+ * removed topics are deleted afterwards; only files this store has read or written are ever deleted, and new
+ * topics get file names not in use yet, so other files in the directory are left alone. Every file is written
+ * to a temporary name and moved into place, so an interrupted save never leaves a half-written file behind.
+ * </p>
+ */
+class ShardedStore implements VocabListener {
+
+    /**
+     * The name of the manifest file inside the directory.
+     */
+    static final String MANIFEST = "manifest.txt";
+
+    private static final String MANIFEST_HEADER = "#vocabulary manifest";
+
+    private final File directory;
+    private final VocabList vocabList;
+    // the file each topic is saved in, once it has one
+    private final Map<Vocab, String> shardOf = Collections.synchronizedMap(new IdentityHashMap<>());
+    private final Set<Vocab> dirty = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    // the files this store has read or written, the only ones it may delete
+    private final Set<String> tracked = new HashSet<>();
+    private int nextShard;
+
+    /**
+     * Binds a directory to a list and starts tracking changes. Topics already in the list start out dirty.
+     *
+     * @param directory the directory holding the topic files and the manifest
+     * @param vocabList the list to save into the directory
+     */
+    public ShardedStore(File directory, VocabList vocabList) {
+        this.directory = directory;
+        this.vocabList = vocabList;
+        vocabList.addListener(this);
+    }
+
+    /**
+     * Returns the directory this store saves to.
+     *
+     * @return the directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stops tracking changes of the list.
+     */
+    public void detach() {
+        vocabList.removeListener(this);
+    }
+
+    /**
+     * Checks whether a directory holds a saved vocabulary.
+     *
+     * @param directory the directory to check
+     * @return {@code true} if it contains a manifest
+     */
+    static boolean isShardedDirectory(File directory) {
+        return new File(directory, MANIFEST).isFile();
+    }
+
+    /**
+     * Adds the topics saved in the directory to the list, in manifest order. A topic already in the list,
+     * matched ignoring case, gets the saved words instead of a second copy of the topic, the way loading a
+     * file does, and stays dirty since it no longer matches its file. The topics created by the load are
+     * clean.
+     *
+     * @throws IOException if the manifest or a topic file cannot be read
+     */
+    public synchronized void load() throws IOException {
+        for (String shard : readManifest()) {
+            try (BufferedReader reader = VocabFiles.openReader(new File(directory, shard).getPath())) {
+                Vocab vocab = null;
+                boolean merged = false;
+                ArrayList<String> words = new ArrayList<>();
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    if (line.startsWith("#") && vocab == null) {
+                        String topic = line.substring(1).trim();
+                        int index = vocabList.indexOfTopic(topic);
+                        merged = index >= 0;
+                        if (!merged) {
+                            vocabList.add(topic);
+                            index = vocabList.size() - 1;
+                        }
+                        vocab = vocabList.getVocabAtIndex(index);
+                    } else if (vocab != null) {
+                        words.add(line);
+                    }
+                }
+                if (vocab != null) {
+                    // one sorted pass instead of a walk to every word's position
+                    vocab.getWords().addAll(words);
+                    // a topic spread over two shards keeps the first; the other is deleted by the next save
+                    shardOf.putIfAbsent(vocab, shard);
+                    if (!merged) {
+                        dirty.remove(vocab);
+                    }
+                }
+            }
+            tracked.add(shard);
+            nextShard = Math.max(nextShard, shardNumber(shard) + 1);
+        }
+    }
+
+    /**
+     * Treats the files of the vocabulary already saved in the directory as this store's without loading them,
+     * so the next save replaces that vocabulary and deletes its files.
+     *
+     * @throws IOException if the manifest cannot be read
+     */
+    public synchronized void takeOver() throws IOException {
+        for (String shard : readManifest()) {
+            tracked.add(shard);
+            nextShard = Math.max(nextShard, shardNumber(shard) + 1);
+        }
+    }
+
+    /**
+     * Saves a snapshot of the list: rewrites the files of dirty topics in parallel, replaces the manifest and
+     * deletes the files of topics that are gone.
+     *
+     * @param snapshot the state to save, taken from the list this store tracks
+     * @return the number of topic files written
+     * @throws IOException if a file cannot be written
+     */
+    public synchronized int save(PersistentVocabList snapshot) throws IOException {
+        Files.createDirectories(directory.toPath());
+
+        ArrayList<PersistentVocabList.Entry> toWrite = new ArrayList<>();
+        HashSet<String> live = new HashSet<>();
+        for (PersistentVocabList.Entry entry : snapshot) {
+            Vocab vocab = entry.getSource();
+            String shard = shardOf.get(vocab);
+            if (shard == null) {
+                // skip the names of files this store does not know about
+                do {
+                    shard = "topic-" + (nextShard++) + ".txt";
+                } while (!tracked.contains(shard) && new File(directory, shard).exists());
+                shardOf.put(vocab, shard);
+                dirty.add(vocab);
+            }
+            live.add(shard);
+            tracked.add(shard);
+            // clear the flag before writing, so a change made during the save marks it dirty again
+            if (dirty.remove(vocab)) {
+                toWrite.add(entry);
+            }
+        }
+
+        Set<Vocab> written = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        try {
+            toWrite.parallelStream().forEach(entry -> {
+                try {
+                    writeShard(entry);
+                    written.add(entry.getSource());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // the writes that failed, or were skipped after the failure, must be retried by the next save
+            for (PersistentVocabList.Entry entry : toWrite) {
+                if (!written.contains(entry.getSource())) {
+                    dirty.add(entry.getSource());
+                }
+            }
+            throw e.getCause();
+        }
+
+        writeManifest(snapshot);
+
+        // topics that were removed from the list leave their files behind, delete them
+        for (Iterator<String> shards = tracked.iterator(); shards.hasNext(); ) {
+            String shard = shards.next();
+            if (!live.contains(shard)) {
+                Files.deleteIfExists(new File(directory, shard).toPath());
+                shards.remove();
+            }
+        }
+        synchronized (shardOf) {
+            shardOf.values().retainAll(live);
+        }
+        return toWrite.size();
+    }
+
+    @Override
+    public void topicAdded(int index, Vocab vocab) {
+        dirty.add(vocab);
+    }
+
+    @Override
+    public void topicRemoved(int index, Vocab vocab) {
+        dirty.remove(vocab);
+    }
+
+    @Override
+    public void topicRenamed(Vocab vocab, String oldTopic) {
+        dirty.add(vocab);
+    }
+
+    @Override
+    public void wordAdded(Vocab vocab, String word) {
+        dirty.add(vocab);
+    }
+
+    @Override
+    public void wordDeleted(Vocab vocab, String word) {
+        dirty.add(vocab);
+    }
+
+    private void writeShard(PersistentVocabList.Entry entry) throws IOException {
+        File target = new File(directory, shardOf.get(entry.getSource()));
+        File temp = new File(directory, target.getName() + ".tmp");
+        PrintWriter pw = VocabFiles.openWriter(temp.getPath());
+        pw.println("#" + entry.getTopic());
+        for (String word : entry.getWords()) {
+            pw.println(word);
+        }
+        // closing flushes the last buffer and finishes a compressed stream, which can fail too
+        pw.close();
+        if (pw.checkError()) {
+            throw new IOException("Could not write " + temp);
+        }
+        VocabFiles.replace(temp, target);
+    }
+
+    private void writeManifest(PersistentVocabList snapshot) throws IOException {
+        File target = new File(directory, MANIFEST);
+        File temp = new File(directory, MANIFEST + ".tmp");
+        PrintWriter pw = VocabFiles.openWriter(temp.getPath());
+        pw.println(MANIFEST_HEADER);
+        for (PersistentVocabList.Entry entry : snapshot) {
+            pw.println(shardOf.get(entry.getSource()) + "\t" + entry.getTopic());
+        }
+        pw.close();
+        if (pw.checkError()) {
+            throw new IOException("Could not write " + temp);
+        }
+        VocabFiles.replace(temp, target);
+    }
+
+    private ArrayList<String> readManifest() throws IOException {
+        ArrayList<String> shards = new ArrayList<>();
+        try (BufferedReader manifest = VocabFiles.openReader(new File(directory, MANIFEST).getPath())) {
+            String line = manifest.readLine();
+            if (!MANIFEST_HEADER.equals(line)) {
+                throw new IOException("Not a vocabulary manifest: " + new File(directory, MANIFEST));
+            }
+            while ((line = manifest.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    // the topic name follows the file name, it is only there for people reading the manifest
+                    shards.add(line.split("\t", 2)[0]);
+                }
+            }
+        }
+        return shards;
+    }
+
+    private static int shardNumber(String shard) {
+        try {
+            return Integer.parseInt(shard.substring("topic-".length(), shard.indexOf('.')));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+}
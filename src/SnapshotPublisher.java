@@ -0,0 +1,77 @@
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps an immutable {@link PersistentVocabList} in step with a live {@link VocabList}.
+ * <p>
+ * Every change reported to this listener produces a new version that shares all untouched structure with the
+ * previous one, and the new version is published with a single atomic reference update. Readers such as a
+ * save running on another thread call {@link #current()} once and work on that version without locks; they
+ * never see a half-applied edit, and writers never wait for them.
+ * </p>
+ * <p>
+ * Each topic gets a slot in the snapshots when it is added, remembered here by identity, so a word change
+ * goes straight to its topic's entry instead of searching the topics for it.
+ * </p>
+ */
+class SnapshotPublisher implements VocabListener {
+
+    private final AtomicReference<PersistentVocabList> root = new AtomicReference<>(PersistentVocabList.EMPTY);
+
+    // the slot of every live topic; only the thread making changes touches these
+    private final IdentityHashMap<Vocab, Integer> slots = new IdentityHashMap<>();
+    private final BitSet usedSlots = new BitSet();
+
+    /**
+     * Returns the most recently published version.
+     *
+     * @return a consistent, immutable view of the vocabulary
+     */
+    public PersistentVocabList current() {
+        return root.get();
+    }
+
+    @Override
+    public void topicAdded(int index, Vocab vocab) {
+        int slot = usedSlots.nextClearBit(0);
+        usedSlots.set(slot);
+        slots.put(vocab, slot);
+        PersistentWordList words = PersistentWordList.of(vocab.getWords());
+        root.updateAndGet(list -> list.insert(index, slot, new PersistentVocabList.Entry(vocab, vocab.getTopic(), words)));
+    }
+
+    @Override
+    public void topicRemoved(int index, Vocab vocab) {
+        Integer slot = slots.remove(vocab);
+        if (slot != null) {
+            usedSlots.clear(slot);
+        }
+        root.updateAndGet(list -> list.remove(index));
+    }
+
+    @Override
+    public void topicRenamed(Vocab vocab, String oldTopic) {
+        int slot = slots.get(vocab);
+        root.updateAndGet(list -> list.replace(slot,
+                new PersistentVocabList.Entry(vocab, vocab.getTopic(), list.entry(slot).getWords())));
+    }
+
+    @Override
+    public void wordAdded(Vocab vocab, String word) {
+        int slot = slots.get(vocab);
+        root.updateAndGet(list -> {
+            PersistentVocabList.Entry entry = list.entry(slot);
+            return list.replace(slot, new PersistentVocabList.Entry(vocab, entry.getTopic(), entry.getWords().add(word)));
+        });
+    }
+
+    @Override
+    public void wordDeleted(Vocab vocab, String word) {
+        int slot = slots.get(vocab);
+        root.updateAndGet(list -> {
+            PersistentVocabList.Entry entry = list.entry(slot);
+            return list.replace(slot, new PersistentVocabList.Entry(vocab, entry.getTopic(), entry.getWords().delete(word)));
+        });
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * An n-gram index over every word of a {@link VocabList} that answers "which words contain this text" queries
+ * without scanning every word list.
+ * <p>
+ * Every distinct word is registered under each of its substrings of three characters (its trigrams). A query
+ * of three characters is answered directly from its postings. A longer query looks up each of its trigrams,
+ * takes the shortest postings and only verifies those candidates with {@link String#contains(CharSequence)}.
+ * Shorter queries match so many words that an index would barely narrow them down, so they are verified
+ * against every distinct word instead. Indexing trigrams only keeps loading cheap: a word has about as many
+ * trigrams as characters, where all its one- to three-character substrings were three times as many. The
+ * bookkeeping of words, topics and postings is done by {@link TermIndex}.
+ * </p>
+ */
+class SubstringIndex extends TermIndex {
+
+    /**
+     * The length of the indexed substrings.
+     */
+    private static final int GRAM_LENGTH = 3;
+
+    /**
+     * Creates an empty index.
+     */
+    SubstringIndex() {
+        super(SubstringIndex::grams);
+    }
+
+    /**
+     * Returns every indexed word that contains the given text, sorted by {@link WordOrder}.
+     *
+     * @param text the text to look for; matching is case insensitive since words are stored in lower case
+     * @return the matching words, possibly empty
+     */
+    public ArrayList<String> search(String text) {
+        ArrayList<String> result = new ArrayList<>();
+        String query = text.toLowerCase();
+        if (query.isEmpty()) {
+            return result;
+        }
+
+        if (query.length() < GRAM_LENGTH) {
+            for (String word : words()) {
+                if (word.contains(query)) {
+                    result.add(word);
+                }
+            }
+        } else if (query.length() == GRAM_LENGTH) {
+            result.addAll(wordsWith(query));
+        } else {
+            // every match contains all trigrams of the query, so the rarest one bounds the candidates
+            String rarest = null;
+            for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+                String gram = query.substring(i, i + GRAM_LENGTH);
+                int size = postingSize(gram);
+                if (size == 0) {
+                    return result;
+                }
+                if (rarest == null || size < postingSize(rarest)) {
+                    rarest = gram;
+                }
+            }
+            for (String word : wordsWith(rarest)) {
+                if (word.contains(query)) {
+                    result.add(word);
+                }
+            }
+        }
+        WordOrder.sort(result);
+        return result;
+    }
+
+    /**
+     * Returns the distinct trigrams of a word, none if it is shorter than {@link #GRAM_LENGTH}.
+     */
+    private static HashSet<String> grams(String word) {
+        HashSet<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= word.length(); i++) {
+            grams.add(word.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+}
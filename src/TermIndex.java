@@ -0,0 +1,229 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Maps terms taken from the words of a {@link VocabList} to the distinct words that contain them, and every word
+ * to the topics holding it. What a term is depends on the splitting function: the trigrams of a word for
+ * {@link SubstringIndex}, its component words for {@link TokenIndex}.
+ * <p>
+ * Every distinct word gets an integer id, and a term's postings are a growing array of the ids of the words
+ * holding it, so an entry costs four bytes instead of a hash set node. A word is split once, when its first
+ * occurrence is added, and its id is appended to the postings of its terms; ids only grow, so the arrays stay
+ * in id order without sorting. When the last occurrence of a word is deleted only its id is retired, and
+ * lookups skip retired ids; once more ids are retired than live, every posting array is compacted in one pass.
+ * Copies of a word in several topics, or twice in one topic, cost a single entry. The index is a
+ * {@link VocabListener} and stays up to date as words and topics are added or removed.
+ * </p>
+ */
+class TermIndex implements VocabListener {
+
+    // compaction is not worth it for a handful of retired ids
+    private static final int MIN_RETIRED_TO_COMPACT = 1024;
+
+    /**
+     * The ids of the words holding one term, in increasing order.
+     */
+    private static final class Postings {
+        int[] ids = new int[2];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    /**
+     * One indexed word: its id and the vocabularies holding it, one entry per occurrence.
+     */
+    private static final class Entry {
+        int id;
+        final ArrayList<Vocab> topics = new ArrayList<>(1);
+
+        Entry(int id) {
+            this.id = id;
+        }
+    }
+
+    private final Function<String, ? extends Collection<String>> terms;
+
+    private final HashMap<String, Postings> postings = new HashMap<>();
+    private final HashMap<String, Entry> entries = new HashMap<>();
+    // the word of every id, null once retired
+    private final ArrayList<String> words = new ArrayList<>();
+    private int retired;
+
+    /**
+     * Creates an empty index.
+     *
+     * @param terms splits a word into its distinct terms
+     */
+    TermIndex(Function<String, ? extends Collection<String>> terms) {
+        this.terms = terms;
+    }
+
+    @Override
+    public void topicAdded(int index, Vocab vocab) {
+        for (String word : vocab.getWords()) {
+            wordAdded(vocab, word);
+        }
+    }
+
+    @Override
+    public void topicRemoved(int index, Vocab vocab) {
+        for (String word : vocab.getWords()) {
+            wordDeleted(vocab, word);
+        }
+    }
+
+    @Override
+    public void wordAdded(Vocab vocab, String word) {
+        Entry entry = entries.get(word);
+        if (entry == null) {
+            entry = new Entry(words.size());
+            entries.put(word, entry);
+            words.add(word);
+            for (String term : terms.apply(word)) {
+                postings.computeIfAbsent(term, t -> new Postings()).add(entry.id);
+            }
+        }
+        entry.topics.add(vocab);
+    }
+
+    @Override
+    public void wordDeleted(Vocab vocab, String word) {
+        Entry entry = entries.get(word);
+        if (entry == null || !entry.topics.remove(vocab) || !entry.topics.isEmpty()) {
+            return;
+        }
+        // last occurrence of the word is gone, retire its id
+        entries.remove(word);
+        words.set(entry.id, null);
+        retired++;
+        if (retired >= MIN_RETIRED_TO_COMPACT && retired > entries.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns the distinct words containing a term.
+     *
+     * @param term the term, as the splitting function produces it
+     * @return the words, in the order they were first added, possibly empty
+     */
+    List<String> wordsWith(String term) {
+        Postings found = postings.get(term);
+        if (found == null) {
+            return Collections.emptyList();
+        }
+        ArrayList<String> result = new ArrayList<>(found.size);
+        for (int i = 0; i < found.size; i++) {
+            String word = words.get(found.ids[i]);
+            if (word != null) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns an upper bound of the number of words containing a term, without looking them up.
+     *
+     * @param term the term, as the splitting function produces it
+     * @return the length of the term's postings, retired words included
+     */
+    int postingSize(String term) {
+        Postings found = postings.get(term);
+        return found == null ? 0 : found.size;
+    }
+
+    /**
+     * Returns every indexed word, for queries the terms cannot answer.
+     *
+     * @return the distinct words, in the order they were first added
+     */
+    Iterable<String> words() {
+        return () -> new Iterator<String>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < words.size() && words.get(from) == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < words.size();
+            }
+
+            @Override
+            public String next() {
+                String word = words.get(next);
+                next = advance(next + 1);
+                return word;
+            }
+        };
+    }
+
+    /**
+     * Returns the vocabularies that hold the given word, in the order the word was added to them.
+     *
+     * @param word an indexed word
+     * @return the vocabularies holding the word, or an empty list if the word is not indexed
+     */
+    public List<Vocab> getTopics(String word) {
+        Entry entry = entries.get(word);
+        if (entry == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(entry.topics);
+    }
+
+    /**
+     * Renumbers the live words from 0 in their current order and rewrites every posting array without the
+     * retired ids, dropping the postings left empty.
+     */
+    private void compact() {
+        int[] renumbered = new int[words.size()];
+        ArrayList<String> live = new ArrayList<>(entries.size());
+        for (int id = 0; id < words.size(); id++) {
+            String word = words.get(id);
+            renumbered[id] = word == null ? -1 : live.size();
+            if (word != null) {
+                live.add(word);
+            }
+        }
+        for (Iterator<Postings> all = postings.values().iterator(); all.hasNext(); ) {
+            Postings found = all.next();
+            int size = 0;
+            for (int i = 0; i < found.size; i++) {
+                int id = renumbered[found.ids[i]];
+                if (id >= 0) {
+                    found.ids[size++] = id;
+                }
+            }
+            found.size = size;
+            if (size == 0) {
+                all.remove();
+            } else if (size < found.ids.length / 4) {
+                found.ids = Arrays.copyOf(found.ids, size * 2);
+            }
+        }
+        for (Entry entry : entries.values()) {
+            entry.id = renumbered[entry.id];
+        }
+        words.clear();
+        words.addAll(live);
+        retired = 0;
+    }
+}
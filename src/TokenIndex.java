@@ -0,0 +1,59 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/**
+ * Indexes the component words of multi-word and annotated entries, such as "take off" or "go(with/together)",
+ * so a search for "off" or "together" finds the entries holding them.
+ * <p>
+ * An entry is split into tokens at every character that is not a letter, a digit or an apostrophe, so spaces,
+ * hyphens, slashes and the parentheses around annotations all separate tokens, and the words inside an
+ * annotation become tokens of their own. Every token maps to the distinct entries holding it, so a lookup is
+ * one hash probe. The bookkeeping of entries and topics is done by {@link TermIndex}.
+ * </p>
+ */
+class TokenIndex extends TermIndex {
+
+    /**
+     * Creates an empty index.
+     */
+    TokenIndex() {
+        super(TokenIndex::tokens);
+    }
+
+    /**
+     * Returns the entries that have the given token as one of their components, sorted by {@link WordOrder}.
+     *
+     * @param token a single word; matching ignores case since entries are stored in lower case
+     * @return the entries holding the token, possibly empty
+     */
+    public ArrayList<String> lookup(String token) {
+        ArrayList<String> result = new ArrayList<>(wordsWith(token.toLowerCase()));
+        WordOrder.sort(result);
+        return result;
+    }
+
+    /**
+     * Splits an entry into its distinct tokens, in the order they appear.
+     *
+     * @param entry the entry
+     * @return the tokens
+     */
+    static LinkedHashSet<String> tokens(String entry) {
+        LinkedHashSet<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= entry.length(); i++) {
+            boolean part = i < entry.length() && isTokenChar(entry.charAt(i));
+            if (part && start < 0) {
+                start = i;
+            } else if (!part && start >= 0) {
+                tokens.add(entry.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isTokenChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '\'';
+    }
+}
@@ -0,0 +1,277 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Answers boolean queries over topics, such as {@code (Education OR Entertainment and Media) AND NOT Colours},
+ * with bit operations instead of word list scans.
+ * <p>
+ * Every topic gets a small integer id and every distinct word a word id. The index keeps, for each word, the
+ * set of topics holding it, and for each topic, the set of word ids it holds, both as {@link BitSet}s kept up to
+ * date on every change. A query combines the topics' word sets with {@code and}, {@code or} and {@code andNot},
+ * which work on 64 words at a time, and only the words in the result are looked up. Ids freed by deleted
+ * topics and words are reused, so the bit sets stay as small as the live vocabulary.
+ * </p>
+ * <p>
+ * In a query, {@code AND}, {@code OR} and {@code NOT} must be in upper case and bind in the usual order, NOT
+ * first and OR last; parentheses group. Everything else is a topic name, matched ignoring case, so names may
+ * hold spaces and lower case words such as "and". A name shared by several topics stands for all of them.
+ * </p>
+ */
+class TopicBitmapIndex implements VocabListener {
+
+    // topics and their ids
+    private final IdentityHashMap<Vocab, Integer> topicIds = new IdentityHashMap<>();
+    private final ArrayList<Vocab> topics = new ArrayList<>();
+    private final ArrayList<BitSet> topicWords = new ArrayList<>();
+    private final BitSet freeTopicIds = new BitSet();
+
+    // distinct words and their ids
+    private final HashMap<String, Integer> wordIds = new HashMap<>();
+    private final ArrayList<String> words = new ArrayList<>();
+    private final ArrayList<BitSet> wordTopics = new ArrayList<>();
+    private final BitSet liveWords = new BitSet();
+    // ids given up by removed words, kept apart so a new word does not scan the live ones for a gap
+    private final BitSet freeWordIds = new BitSet();
+
+    /**
+     * Returns the topics holding a word.
+     *
+     * @param word the word
+     * @return the topics, in id order, empty if no topic holds the word
+     */
+    public List<Vocab> getTopics(String word) {
+        ArrayList<Vocab> found = new ArrayList<>();
+        Integer id = wordIds.get(word);
+        if (id != null) {
+            BitSet set = wordTopics.get(id);
+            for (int t = set.nextSetBit(0); t >= 0; t = set.nextSetBit(t + 1)) {
+                found.add(topics.get(t));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Evaluates a boolean expression over topics.
+     *
+     * @param expression the query
+     * @return the words matching the query, sorted by {@link WordOrder}
+     * @throws IllegalArgumentException if the query is malformed or names a topic that does not exist
+     */
+    public List<String> query(String expression) {
+        BitSet result = new Parser(expression).parse();
+        ArrayList<String> found = new ArrayList<>(result.cardinality());
+        for (int w = result.nextSetBit(0); w >= 0; w = result.nextSetBit(w + 1)) {
+            found.add(words.get(w));
+        }
+        WordOrder.sort(found);
+        return found;
+    }
+
+    @Override
+    public void topicAdded(int index, Vocab vocab) {
+        int id = freeTopicIds.nextSetBit(0);
+        if (id < 0) {
+            id = topics.size();
+            topics.add(vocab);
+            topicWords.add(new BitSet());
+        } else {
+            freeTopicIds.clear(id);
+            topics.set(id, vocab);
+        }
+        topicIds.put(vocab, id);
+        for (String word : vocab.getWords()) {
+            wordAdded(vocab, word);
+        }
+    }
+
+    @Override
+    public void topicRemoved(int index, Vocab vocab) {
+        Integer id = topicIds.remove(vocab);
+        if (id == null) {
+            return;
+        }
+        BitSet held = topicWords.get(id);
+        for (int w = held.nextSetBit(0); w >= 0; w = held.nextSetBit(w + 1)) {
+            unlink(w, id);
+        }
+        held.clear();
+        topics.set(id, null);
+        freeTopicIds.set(id);
+    }
+
+    @Override
+    public void wordAdded(Vocab vocab, String word) {
+        Integer topic = topicIds.get(vocab);
+        if (topic == null) {
+            return;
+        }
+        Integer id = wordIds.get(word);
+        if (id == null) {
+            id = freeWordIds.nextSetBit(0);
+            if (id < 0) {
+                id = words.size();
+                words.add(word);
+                wordTopics.add(new BitSet());
+            } else {
+                freeWordIds.clear(id);
+                words.set(id, word);
+            }
+            wordIds.put(word, id);
+            liveWords.set(id);
+        }
+        wordTopics.get(id).set(topic);
+        topicWords.get(topic).set(id);
+    }
+
+    @Override
+    public void wordDeleted(Vocab vocab, String word) {
+        Integer topic = topicIds.get(vocab);
+        Integer id = wordIds.get(word);
+        // a word added twice stays in the topic until the last copy is gone
+        if (topic != null && id != null && !vocab.getWords().contains(word)) {
+            topicWords.get(topic).clear(id);
+            unlink(id, topic);
+        }
+    }
+
+    /**
+     * Removes a topic from a word's topics, and frees the word id once no topic holds the word.
+     */
+    private void unlink(int wordId, int topic) {
+        BitSet set = wordTopics.get(wordId);
+        set.clear(topic);
+        if (set.isEmpty()) {
+            wordIds.remove(words.get(wordId));
+            words.set(wordId, null);
+            liveWords.clear(wordId);
+            freeWordIds.set(wordId);
+        }
+    }
+
+    /**
+     * The word ids of all topics with the given name.
+     */
+    private BitSet wordsOf(String name) {
+        BitSet result = null;
+        for (int t = 0; t < topics.size(); t++) {
+            Vocab vocab = topics.get(t);
+            if (vocab != null && vocab.getTopic().equalsIgnoreCase(name)) {
+                if (result == null) {
+                    result = (BitSet) topicWords.get(t).clone();
+                } else {
+                    result.or(topicWords.get(t));
+                }
+            }
+        }
+        if (result == null) {
+            throw new IllegalArgumentException("There is no topic named '" + name + "'");
+        }
+        return result;
+    }
+
+    /**
+     * A recursive descent parser that evaluates while it parses:
+     * <pre>
+     * expression := term { OR term }
+     * term       := factor { AND factor }
+     * factor     := NOT factor | ( expression ) | topic name
+     * </pre>
+     */
+    private final class Parser {
+        private final ArrayList<String> tokens = new ArrayList<>();
+        private int position;
+
+        Parser(String expression) {
+            StringBuilder token = new StringBuilder();
+            for (int i = 0; i < expression.length(); i++) {
+                char c = expression.charAt(i);
+                if (c == '(' || c == ')' || Character.isWhitespace(c)) {
+                    if (token.length() > 0) {
+                        tokens.add(token.toString());
+                        token.setLength(0);
+                    }
+                    if (!Character.isWhitespace(c)) {
+                        tokens.add(String.valueOf(c));
+                    }
+                } else {
+                    token.append(c);
+                }
+            }
+            if (token.length() > 0) {
+                tokens.add(token.toString());
+            }
+        }
+
+        BitSet parse() {
+            if (tokens.isEmpty()) {
+                throw new IllegalArgumentException("The query is empty");
+            }
+            BitSet result = expression();
+            if (position < tokens.size()) {
+                throw new IllegalArgumentException("Unexpected '" + tokens.get(position) + "'");
+            }
+            return result;
+        }
+
+        private BitSet expression() {
+            BitSet result = term();
+            while (accept("OR")) {
+                result.or(term());
+            }
+            return result;
+        }
+
+        private BitSet term() {
+            BitSet result = factor();
+            while (accept("AND")) {
+                result.and(factor());
+            }
+            return result;
+        }
+
+        private BitSet factor() {
+            if (accept("NOT")) {
+                BitSet result = (BitSet) liveWords.clone();
+                result.andNot(factor());
+                return result;
+            }
+            if (accept("(")) {
+                BitSet result = expression();
+                if (!accept(")")) {
+                    throw new IllegalArgumentException("Missing ')'");
+                }
+                return result;
+            }
+            // a topic name runs until the next operator or parenthesis
+            StringBuilder name = new StringBuilder();
+            while (position < tokens.size() && !isOperator(tokens.get(position))) {
+                if (name.length() > 0) {
+                    name.append(' ');
+                }
+                name.append(tokens.get(position++));
+            }
+            if (name.length() == 0) {
+                throw new IllegalArgumentException(position < tokens.size()
+                        ? "Expected a topic before '" + tokens.get(position) + "'" : "Expected a topic at the end");
+            }
+            return wordsOf(name.toString());
+        }
+
+        private boolean accept(String token) {
+            if (position < tokens.size() && tokens.get(position).equals(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isOperator(String token) {
+            return token.equals("AND") || token.equals("OR") || token.equals("NOT") || token.equals("(")
+                    || token.equals(")");
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams a vocabulary file one topic at a time.
+ * <p>
+ * Each {@code #topic} section is returned as a {@link VocabDiff.Block} holding the topic's words in lower case
+ * and sorted by {@link WordOrder}, exactly as a {@link WordList} would hold them. Only one topic is in memory
+ * at a time. Sections saved by this program are already sorted and are only checked; other files are sorted
+ * per topic. Words before the first topic are ignored, as they belong to no topic.
+ * </p>
+ * <p>
+ * Every block carries a fingerprint, a hash of its section's lines. Given the blocks of an earlier read with
+ * {@link #reuse(Map)}, a section whose fingerprint matches is returned as the earlier block, without
+ * lowering, sorting or copying its words.
+ * </p>
+ */
+class TopicBlockReader implements Iterator<VocabDiff.Block>, Closeable {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final BufferedReader reader;
+    // the topic line that ended the previous block, or null at the end of the file
+    private String nextTopic;
+    // the hash of the lines read by the last readUntilTopic
+    private long fingerprint;
+    // blocks of an earlier read by topic, or null
+    private Map<String, VocabDiff.Block> previous;
+
+    /**
+     * Opens a vocabulary file, gzip-compressed or not.
+     *
+     * @param fileName the file to read
+     * @throws IOException if the file cannot be opened
+     */
+    public TopicBlockReader(String fileName) throws IOException {
+        this(VocabFiles.openReader(fileName));
+    }
+
+    /**
+     * Reads vocabulary text from a reader.
+     *
+     * @param reader the reader to take the text from
+     * @throws IOException if reading fails
+     */
+    public TopicBlockReader(BufferedReader reader) throws IOException {
+        this.reader = reader;
+        // skip anything before the first topic
+        nextTopic = readUntilTopic(null);
+    }
+
+    /**
+     * Hands back blocks of an earlier read for the sections that have not changed since.
+     *
+     * @param blocks the earlier blocks by topic name
+     */
+    void reuse(Map<String, VocabDiff.Block> blocks) {
+        previous = blocks;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextTopic != null;
+    }
+
+    @Override
+    public VocabDiff.Block next() {
+        if (nextTopic == null) {
+            throw new NoSuchElementException();
+        }
+        String topic = nextTopic;
+        ArrayList<String> words = new ArrayList<>();
+        try {
+            nextTopic = readUntilTopic(words);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (previous != null) {
+            VocabDiff.Block earlier = previous.get(topic);
+            if (earlier != null && earlier.getFingerprint() == fingerprint) {
+                return earlier;
+            }
+        }
+        if (!isSorted(words)) {
+            WordOrder.sort(words);
+        }
+        return new VocabDiff.Block(topic, words.toArray(new String[0]), fingerprint);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads lines up to the next topic line, adding the words to the given list if it is not null.
+     *
+     * @return the name of the next topic, or null at the end of the file
+     */
+    private String readUntilTopic(ArrayList<String> words) throws IOException {
+        String line;
+        long hash = FNV_OFFSET;
+        try {
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.startsWith("#")) {
+                    return line.substring(1).trim();
+                }
+                if (words != null) {
+                    words.add(line.toLowerCase());
+                }
+                // FNV-1a over the characters, with a line break after each line
+                for (int i = 0; i < line.length(); i++) {
+                    hash = (hash ^ line.charAt(i)) * FNV_PRIME;
+                }
+                hash = (hash ^ '\n') * FNV_PRIME;
+            }
+            return null;
+        } finally {
+            fingerprint = hash;
+        }
+    }
+
+    private static boolean isSorted(ArrayList<String> words) {
+        byte[] previousKey = null;
+        for (int i = 0; i < words.size(); i++) {
+            byte[] key = WordOrder.key(words.get(i));
+            if (i > 0 && WordOrder.compare(previousKey, words.get(i - 1), key, words.get(i)) > 0) {
+                return false;
+            }
+            previousKey = key;
+        }
+        return true;
+    }
+}
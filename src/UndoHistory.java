@@ -0,0 +1,234 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Undo and redo for every change made to a {@link VocabList} and its {@link WordList}s.
+ * <p>
+ * The history listens to the list and records each change as a small inverse operation that refers to the
+ * vocabulary and word involved, never as a copy of the data. A removed topic is kept as the detached
+ * {@link Vocab} itself and linked back in on undo, so the memory of a step grows with the size of the change,
+ * not with the size of the vocabulary. Changes made between {@link #beginStep()} and {@link #endStep()} are
+ * undone together; applying the inverse operations is itself recorded, which gives the matching redo step.
+ * </p>
+ * <p>
+ * Bulk changes such as loading a file are kept cheap to undo. Words added to or deleted from a topic created
+ * in the same step are not recorded at all, since removing the topic takes them along and re-adding it brings
+ * them back. Consecutive words added to or deleted from one topic are recorded as one change that reverts
+ * them with a single pass over the topic's words, instead of one walk through the list per word.
+ * </p>
+ */
+class UndoHistory implements VocabListener {
+
+    /**
+     * One recorded change that knows how to revert itself.
+     */
+    private interface Change {
+        void revert(VocabList vocabList);
+    }
+
+    /**
+     * Words added to, or deleted from, one topic one after another, reverted together.
+     */
+    private static final class WordBatch implements Change {
+        final Vocab vocab;
+        final boolean added;
+        final ArrayList<String> words = new ArrayList<>(1);
+
+        WordBatch(Vocab vocab, boolean added) {
+            this.vocab = vocab;
+            this.added = added;
+        }
+
+        @Override
+        public void revert(VocabList vocabList) {
+            if (added) {
+                vocab.getWords().deleteAll(words);
+            } else {
+                // deleted copies come back as copies
+                vocab.getWords().addAll(words, true);
+            }
+        }
+    }
+
+    private final VocabList vocabList;
+    private final int maxSteps;
+    private final ArrayDeque<ArrayList<Change>> undoStack = new ArrayDeque<>();
+    private final ArrayDeque<ArrayList<Change>> redoStack = new ArrayDeque<>();
+
+    // the step changes are currently recorded into, or null outside of a step
+    private ArrayList<Change> recording;
+    // the topics added during the current step, whose word changes need no record
+    private Set<Vocab> created = newVocabSet();
+
+    /**
+     * Constructs a history for the given list and registers it as a listener.
+     *
+     * @param vocabList the list whose changes are recorded
+     * @param maxSteps the number of steps kept; older steps are forgotten
+     */
+    public UndoHistory(VocabList vocabList, int maxSteps) {
+        this.vocabList = vocabList;
+        this.maxSteps = maxSteps;
+        // topics already in the list are reported as added on registration; they are not a change to undo
+        recording = new ArrayList<>();
+        vocabList.addListener(this);
+        recording = null;
+        created.clear();
+    }
+
+    /**
+     * Starts a step. All changes until {@link #endStep()} are undone and redone together.
+     */
+    public void beginStep() {
+        recording = new ArrayList<>();
+        created.clear();
+    }
+
+    /**
+     * Ends the current step. A step that changed anything becomes the newest undo step and clears the redo history.
+     */
+    public void endStep() {
+        if (recording != null && !recording.isEmpty()) {
+            push(undoStack, recording);
+            redoStack.clear();
+        }
+        recording = null;
+        created.clear();
+    }
+
+    /**
+     * Reverts the most recent step.
+     *
+     * @return {@code false} if there was nothing to undo
+     */
+    public boolean undo() {
+        return replay(undoStack, redoStack);
+    }
+
+    /**
+     * Re-applies the most recently undone step.
+     *
+     * @return {@code false} if there was nothing to redo
+     */
+    public boolean redo() {
+        return replay(redoStack, undoStack);
+    }
+
+    /**
+     * Returns whether there is a step to undo.
+     *
+     * @return {@code true} if {@link #undo()} would change something
+     */
+    public boolean canUndo() {
+        return !undoStack.isEmpty();
+    }
+
+    /**
+     * Returns whether there is a step to redo.
+     *
+     * @return {@code true} if {@link #redo()} would change something
+     */
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    @Override
+    public void topicAdded(int index, Vocab vocab) {
+        record(list -> list.deleteAtIndex(index));
+        if (recording != null) {
+            created.add(vocab);
+        }
+    }
+
+    @Override
+    public void topicRemoved(int index, Vocab vocab) {
+        record(list -> list.addVocabAtIndex(index, vocab));
+    }
+
+    @Override
+    public void topicRenamed(Vocab vocab, String oldTopic) {
+        record(list -> vocab.setTopic(oldTopic));
+    }
+
+    @Override
+    public void wordAdded(Vocab vocab, String word) {
+        recordWord(vocab, word, true);
+    }
+
+    @Override
+    public void wordDeleted(Vocab vocab, String word) {
+        recordWord(vocab, word, false);
+    }
+
+    /**
+     * Pops a step from one stack, reverts it newest change first, and pushes the recorded inverse onto the other.
+     */
+    private boolean replay(ArrayDeque<ArrayList<Change>> from, ArrayDeque<ArrayList<Change>> to) {
+        ArrayList<Change> step = from.pollFirst();
+        if (step == null) {
+            return false;
+        }
+        ArrayList<Change> outer = recording;
+        Set<Vocab> outerCreated = created;
+        recording = new ArrayList<>();
+        created = newVocabSet();
+        for (int i = step.size() - 1; i >= 0; i--) {
+            step.get(i).revert(vocabList);
+        }
+        push(to, recording);
+        recording = outer;
+        created = outerCreated;
+        return true;
+    }
+
+    /**
+     * Records a word change, adding it to the previous change if that was the same kind of change to the
+     * same topic.
+     */
+    private void recordWord(Vocab vocab, String word, boolean added) {
+        if (recording == null) {
+            WordBatch batch = new WordBatch(vocab, added);
+            batch.words.add(word);
+            record(batch);
+            return;
+        }
+        if (created.contains(vocab)) {
+            return;
+        }
+        Change last = recording.isEmpty() ? null : recording.get(recording.size() - 1);
+        if (last instanceof WordBatch && ((WordBatch) last).vocab == vocab && ((WordBatch) last).added == added) {
+            ((WordBatch) last).words.add(word);
+        } else {
+            WordBatch batch = new WordBatch(vocab, added);
+            batch.words.add(word);
+            recording.add(batch);
+        }
+    }
+
+    private static Set<Vocab> newVocabSet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private void record(Change change) {
+        if (recording != null) {
+            recording.add(change);
+        } else {
+            // a change made outside of a step is a step of its own
+            ArrayList<Change> step = new ArrayList<>(1);
+            step.add(change);
+            push(undoStack, step);
+            redoStack.clear();
+        }
+    }
+
+    private void push(ArrayDeque<ArrayList<Change>> stack, ArrayList<Change> step) {
+        step.trimToSize();
+        stack.addFirst(step);
+        if (stack.size() > maxSteps) {
+            stack.removeLast();
+        }
+    }
+}
@@ -15,6 +15,17 @@ public class Vocab {
      */
     private WordList words;
     
+    /**
+     * The list this vocabulary is currently linked into, or {@code null} if it is not in a list.
+     */
+    private VocabList list;
+    
+    /**
+     * A Bloom filter over the words, built on first use, or {@code null} when it must be (re)built
+     * because words were deleted or it outgrew its size.
+     */
+    private volatile BloomFilter filter;
+    
     /**
      * Constructs an empty vocabulary with no topic and an empty list of words.
      * This constructor is useful when the details of the vocabulary are not yet available at the time of instantiation.
@@ -30,6 +41,7 @@ public class Vocab {
     public Vocab(String topic) {
         this.topic = topic;
         this.words = new WordList();
+        this.words.setOwner(this);
     }
     
     /**
@@ -41,6 +53,9 @@ public class Vocab {
     public Vocab(String topic, WordList words) {
         this.topic = topic;
         this.words = words;
+        if (words != null) {
+            words.setOwner(this);
+        }
     }
     
     /**
@@ -58,7 +73,11 @@ public class Vocab {
      * @param topic The new topic of the vocabulary.
      */
     public void setTopic(String topic) {
+        String oldTopic = this.topic;
         this.topic = topic;
+        if (list != null) {
+            list.fireTopicRenamed(this, oldTopic);
+        }
     }
     
     /**
@@ -69,5 +88,86 @@ public class Vocab {
     public WordList getWords() {
         return words;
     }
+    
+    /**
+     * Sets the list this vocabulary is linked into. Called by {@link VocabList} when the node is linked or unlinked.
+     * 
+     * @param list The list holding this vocabulary, or {@code null} once it has been removed.
+     */
+    void setList(VocabList list) {
+        this.list = list;
+    }
+    
+    /**
+     * Called by the word list after a word was inserted, so listeners of the owning list can be notified.
+     * 
+     * @param word The word as it is stored in the word list.
+     */
+    void wordAdded(String word) {
+        BloomFilter current = filter;
+        if (current != null) {
+            current.add(word);
+            if (current.isOverloaded()) {
+                filter = null;
+            }
+        }
+        if (list != null) {
+            list.fireWordAdded(this, word);
+        }
+    }
+    
+    /**
+     * Called by the word list after a word was removed, so listeners of the owning list can be notified.
+     * 
+     * @param word The word that was removed.
+     */
+    void wordDeleted(String word) {
+        // bits cannot be cleared, the filter is rebuilt from the remaining words on next use
+        filter = null;
+        if (list != null) {
+            list.fireWordDeleted(this, word);
+        }
+    }
+    
+    /**
+     * Checks whether the vocabulary may contain a word, without walking the word list. A {@code false} answer
+     * is always right; a {@code true} answer must be confirmed with {@link WordList#contains(String)}.
+     * 
+     * @param word The word to look for, as it would be passed to {@link WordList#contains(String)}.
+     * @return {@code false} if the word is definitely not in the vocabulary.
+     */
+    public boolean mightContain(String word) {
+        return getFilter().mightContain(word);
+    }
+    
+    /**
+     * Returns the Bloom filter over the words, building it first if needed. The filter is sized for twice
+     * the current number of words, so it is rebuilt only after the word list has doubled.
+     * 
+     * @return The up to date filter.
+     */
+    synchronized BloomFilter getFilter() {
+        BloomFilter current = filter;
+        if (current == null) {
+            int size = words == null ? 0 : words.size();
+            current = new BloomFilter(Math.max(64, size * 2));
+            if (words != null) {
+                for (String word : words) {
+                    current.add(word);
+                }
+            }
+            filter = current;
+        }
+        return current;
+    }
+    
+    /**
+     * Returns the Bloom filter over the words if it is built, without building it.
+     * 
+     * @return The filter, or {@code null} if it is not built at the moment.
+     */
+    BloomFilter peekFilter() {
+        return filter;
+    }
 
 }
@@ -0,0 +1,520 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two vocabularies topic by topic and produces, writes, reads and applies the differences.
+ * <p>
+ * The inputs are streams of {@link Block}s, usually from a {@link TopicBlockReader}, so neither vocabulary is
+ * loaded as a whole. Topics are paired by name while both streams are read in step; a topic is only held in
+ * memory while its partner has not been seen yet, which for two exports of the same list is never longer than
+ * one topic. Names are matched ignoring case, the way {@link VocabList#indexOfTopic(String)} finds the topic a
+ * change applies to, so a topic whose name only changed case is the same topic on both sides. The sorted
+ * words of a pair are merge-joined in one linear pass. Topics without a partner are reported after all pairs,
+ * removed ones first, each side in the order its stream gave them.
+ * </p>
+ * <p>
+ * The differences go to a {@link Sink}. {@link PatchWriter} turns them into a text patch with one change per
+ * line: {@code +#topic} and {@code -#topic} for added and removed topics, {@code @topic} for a changed topic,
+ * and {@code +word} and {@code -word} for the words of the topic named just before. {@link #readPatch} reads
+ * such a patch back, and {@link PatchApplier} applies the changes to a live {@link VocabList}.
+ * </p>
+ */
+final class VocabDiff {
+
+    private VocabDiff() {
+    }
+
+    /**
+     * One topic with its words, lower case and sorted by {@link WordOrder}.
+     */
+    static final class Block {
+        private final String topic;
+        private final String[] words;
+        // a hash of the section's text as read, 0 if unknown
+        private final long fingerprint;
+
+        Block(String topic, String[] words) {
+            this(topic, words, 0);
+        }
+
+        Block(String topic, String[] words, long fingerprint) {
+            this.topic = topic;
+            this.words = words;
+            this.fingerprint = fingerprint;
+        }
+
+        /**
+         * Returns the topic name.
+         *
+         * @return the topic
+         */
+        public String getTopic() {
+            return topic;
+        }
+
+        /**
+         * Returns the sorted words of the topic.
+         *
+         * @return the words
+         */
+        public String[] getWords() {
+            return words;
+        }
+
+        /**
+         * Returns a 64-bit hash of the section's lines as they were read, so an unchanged section can be
+         * recognised without parsing it again.
+         *
+         * @return the hash, or 0 if the block was not read from text
+         */
+        public long getFingerprint() {
+            return fingerprint;
+        }
+    }
+
+    /**
+     * Receives the differences between two vocabularies. A topic event is followed by the word events
+     * that belong to that topic.
+     */
+    interface Sink {
+
+        /**
+         * A topic exists only in the new vocabulary. Its words follow as added words.
+         *
+         * @param topic the topic name
+         */
+        void topicAdded(String topic);
+
+        /**
+         * A topic exists only in the old vocabulary. Its words follow as removed words.
+         *
+         * @param topic the topic name
+         */
+        void topicRemoved(String topic);
+
+        /**
+         * A topic exists in both vocabularies with different words. The differences follow.
+         *
+         * @param topic the topic name
+         */
+        void topicChanged(String topic);
+
+        /**
+         * A word is in the current topic of the new vocabulary only.
+         *
+         * @param word the word
+         */
+        void wordAdded(String word);
+
+        /**
+         * A word is in the current topic of the old vocabulary only.
+         *
+         * @param word the word
+         */
+        void wordRemoved(String word);
+    }
+
+    /**
+     * Reports the differences between an old and a new vocabulary.
+     *
+     * @param oldBlocks the topics of the old vocabulary
+     * @param newBlocks the topics of the new vocabulary
+     * @param sink receives the differences
+     */
+    static void diff(Iterator<Block> oldBlocks, Iterator<Block> newBlocks, Sink sink) {
+        // topics read from one side whose partner has not been read from the other side yet, in the order
+        // they were read, so removed and added topics are reported in their file's order
+        LinkedHashMap<String, ArrayDeque<Block>> pendingOld = new LinkedHashMap<>();
+        LinkedHashMap<String, ArrayDeque<Block>> pendingNew = new LinkedHashMap<>();
+
+        while (oldBlocks.hasNext() || newBlocks.hasNext()) {
+            Block oldBlock = oldBlocks.hasNext() ? oldBlocks.next() : null;
+            Block newBlock = newBlocks.hasNext() ? newBlocks.next() : null;
+
+            if (oldBlock != null && newBlock != null && oldBlock.topic.equalsIgnoreCase(newBlock.topic)) {
+                compare(oldBlock, newBlock, sink);
+                continue;
+            }
+            if (oldBlock != null) {
+                Block partner = take(pendingNew, oldBlock.topic);
+                if (partner != null) {
+                    compare(oldBlock, partner, sink);
+                } else {
+                    pendingOld.computeIfAbsent(matchKey(oldBlock.topic), t -> new ArrayDeque<>()).add(oldBlock);
+                }
+            }
+            if (newBlock != null) {
+                Block partner = take(pendingOld, newBlock.topic);
+                if (partner != null) {
+                    compare(partner, newBlock, sink);
+                } else {
+                    pendingNew.computeIfAbsent(matchKey(newBlock.topic), t -> new ArrayDeque<>()).add(newBlock);
+                }
+            }
+        }
+
+        for (ArrayDeque<Block> blocks : pendingOld.values()) {
+            for (Block block : blocks) {
+                sink.topicRemoved(block.topic);
+                for (String word : block.words) {
+                    sink.wordRemoved(word);
+                }
+            }
+        }
+        for (ArrayDeque<Block> blocks : pendingNew.values()) {
+            blocks.forEach(block -> added(block, sink));
+        }
+    }
+
+    /**
+     * Reports every topic of a vocabulary as added, in the order the stream gives them, the same as a diff
+     * against an empty vocabulary without holding any topic back.
+     *
+     * @param blocks the topics of the vocabulary
+     * @param sink receives the topics and their words
+     */
+    static void added(Iterator<Block> blocks, Sink sink) {
+        blocks.forEachRemaining(block -> added(block, sink));
+    }
+
+    private static void added(Block block, Sink sink) {
+        sink.topicAdded(block.topic);
+        for (String word : block.words) {
+            sink.wordAdded(word);
+        }
+    }
+
+    /**
+     * Reads a text patch written by {@link PatchWriter} and replays it into a sink.
+     *
+     * @param patch the patch text
+     * @param sink receives the changes
+     * @throws IOException if reading fails or a line is not part of a patch
+     */
+    static void readPatch(BufferedReader patch, Sink sink) throws IOException {
+        String line;
+        while ((line = patch.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("+#")) {
+                sink.topicAdded(line.substring(2));
+            } else if (line.startsWith("-#")) {
+                sink.topicRemoved(line.substring(2));
+            } else if (line.startsWith("@")) {
+                sink.topicChanged(line.substring(1));
+            } else if (line.startsWith("+")) {
+                sink.wordAdded(line.substring(1));
+            } else if (line.startsWith("-")) {
+                sink.wordRemoved(line.substring(1));
+            } else {
+                throw new IOException("Not a patch line: " + line);
+            }
+        }
+    }
+
+    /**
+     * Merge-joins the sorted words of one topic from both sides. Words appearing several times are
+     * compared occurrence by occurrence.
+     */
+    private static void compare(Block oldBlock, Block newBlock, Sink sink) {
+        if (oldBlock == newBlock) {
+            // a block reused for an unchanged section
+            return;
+        }
+        String[] a = oldBlock.words;
+        String[] b = newBlock.words;
+        int i = 0;
+        int j = 0;
+        boolean announced = false;
+        byte[] keyA = i < a.length ? WordOrder.key(a[i]) : null;
+        byte[] keyB = j < b.length ? WordOrder.key(b[j]) : null;
+
+        while (i < a.length || j < b.length) {
+            int cmp;
+            if (i == a.length) {
+                cmp = 1;
+            } else if (j == b.length) {
+                cmp = -1;
+            } else {
+                cmp = WordOrder.compare(keyA, a[i], keyB, b[j]);
+            }
+            if (cmp != 0 && !announced) {
+                sink.topicChanged(newBlock.topic);
+                announced = true;
+            }
+            if (cmp <= 0) {
+                if (cmp < 0) {
+                    sink.wordRemoved(a[i]);
+                }
+                i++;
+                keyA = i < a.length ? WordOrder.key(a[i]) : null;
+            }
+            if (cmp >= 0) {
+                if (cmp > 0) {
+                    sink.wordAdded(b[j]);
+                }
+                j++;
+                keyB = j < b.length ? WordOrder.key(b[j]) : null;
+            }
+        }
+    }
+
+    private static Block take(Map<String, ArrayDeque<Block>> pending, String topic) {
+        String key = matchKey(topic);
+        ArrayDeque<Block> blocks = pending.get(key);
+        if (blocks == null) {
+            return null;
+        }
+        Block block = blocks.poll();
+        if (blocks.isEmpty()) {
+            pending.remove(key);
+        }
+        return block;
+    }
+
+    /**
+     * The key topics are paired by, the same for names that differ only in case.
+     */
+    private static String matchKey(String topic) {
+        return topic.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Writes the differences as a text patch.
+     */
+    static final class PatchWriter implements Sink {
+        private final PrintWriter out;
+        private int changes;
+
+        /**
+         * Constructs a sink writing to the given writer.
+         *
+         * @param out the writer receiving the patch
+         */
+        PatchWriter(PrintWriter out) {
+            this.out = out;
+        }
+
+        /**
+         * Returns the number of lines written.
+         *
+         * @return the number of changes
+         */
+        public int getChanges() {
+            return changes;
+        }
+
+        @Override
+        public void topicAdded(String topic) {
+            write("+#" + topic);
+        }
+
+        @Override
+        public void topicRemoved(String topic) {
+            write("-#" + topic);
+        }
+
+        @Override
+        public void topicChanged(String topic) {
+            write("@" + topic);
+        }
+
+        @Override
+        public void wordAdded(String word) {
+            write("+" + word);
+        }
+
+        @Override
+        public void wordRemoved(String word) {
+            write("-" + word);
+        }
+
+        private void write(String line) {
+            out.println(line);
+            changes++;
+        }
+    }
+
+    /**
+     * Keeps the differences in memory so they can be replayed into another sink later, possibly on
+     * another thread.
+     */
+    static final class Recording implements Sink {
+        private static final byte TOPIC_ADDED = 0;
+        private static final byte TOPIC_REMOVED = 1;
+        private static final byte TOPIC_CHANGED = 2;
+        private static final byte WORD_ADDED = 3;
+        private static final byte WORD_REMOVED = 4;
+
+        private final ArrayList<Byte> kinds = new ArrayList<>();
+        private final ArrayList<String> values = new ArrayList<>();
+
+        /**
+         * Returns the number of recorded events.
+         *
+         * @return the number of events
+         */
+        public int size() {
+            return kinds.size();
+        }
+
+        /**
+         * Sends the recorded events, in order, to a sink.
+         *
+         * @param sink receives the events
+         */
+        public void replay(Sink sink) {
+            for (int i = 0; i < kinds.size(); i++) {
+                String value = values.get(i);
+                switch (kinds.get(i)) {
+                    case TOPIC_ADDED:
+                        sink.topicAdded(value);
+                        break;
+                    case TOPIC_REMOVED:
+                        sink.topicRemoved(value);
+                        break;
+                    case TOPIC_CHANGED:
+                        sink.topicChanged(value);
+                        break;
+                    case WORD_ADDED:
+                        sink.wordAdded(value);
+                        break;
+                    default:
+                        sink.wordRemoved(value);
+                }
+            }
+        }
+
+        @Override
+        public void topicAdded(String topic) {
+            record(TOPIC_ADDED, topic);
+        }
+
+        @Override
+        public void topicRemoved(String topic) {
+            record(TOPIC_REMOVED, topic);
+        }
+
+        @Override
+        public void topicChanged(String topic) {
+            record(TOPIC_CHANGED, topic);
+        }
+
+        @Override
+        public void wordAdded(String word) {
+            record(WORD_ADDED, word);
+        }
+
+        @Override
+        public void wordRemoved(String word) {
+            record(WORD_REMOVED, word);
+        }
+
+        private void record(byte kind, String value) {
+            kinds.add(kind);
+            values.add(value);
+        }
+    }
+
+    /**
+     * Applies the differences to a live list. Topics are matched the way {@link VocabList#containsTopic(String)}
+     * matches them, and changes that are already in place are skipped, so applying a patch twice is harmless.
+     * The patch does not record topic positions, so added topics are appended to the end of the list.
+     * <p>
+     * The words added to a topic are collected and merged into its word list in one pass with
+     * {@link WordList#addAll(java.util.Collection)} when the next topic starts, or at {@link #finish()}.
+     * </p>
+     */
+    static final class PatchApplier implements Sink {
+        private final VocabList vocabList;
+        // the topic word changes apply to, or null after a removed topic
+        private Vocab current;
+        // words to add to the current topic
+        private final ArrayList<String> added = new ArrayList<>();
+        private int changes;
+
+        /**
+         * Constructs a sink applying changes to the given list.
+         *
+         * @param vocabList the list to update
+         */
+        PatchApplier(VocabList vocabList) {
+            this.vocabList = vocabList;
+        }
+
+        /**
+         * Returns the number of topics and words actually added or removed.
+         *
+         * @return the number of changes applied
+         */
+        public int getChanges() {
+            return changes;
+        }
+
+        /**
+         * Adds the words still collected for the current topic. Must be called after the last change.
+         */
+        public void finish() {
+            if (current != null && !added.isEmpty()) {
+                changes += current.getWords().addAll(added);
+            }
+            added.clear();
+        }
+
+        @Override
+        public void topicAdded(String topic) {
+            finish();
+            current = findOrAdd(topic);
+        }
+
+        @Override
+        public void topicRemoved(String topic) {
+            finish();
+            current = null;
+            int index = vocabList.indexOfTopic(topic);
+            if (index >= 0) {
+                vocabList.deleteAtIndex(index);
+                changes++;
+            }
+        }
+
+        @Override
+        public void topicChanged(String topic) {
+            finish();
+            current = findOrAdd(topic);
+        }
+
+        @Override
+        public void wordAdded(String word) {
+            if (current != null) {
+                added.add(word);
+            }
+        }
+
+        @Override
+        public void wordRemoved(String word) {
+            if (current != null && current.getWords().contains(word)) {
+                current.getWords().delete(word);
+                changes++;
+            }
+        }
+
+        private Vocab findOrAdd(String topic) {
+            int index = vocabList.indexOfTopic(topic);
+            if (index < 0) {
+                vocabList.add(topic);
+                changes++;
+                index = vocabList.size() - 1;
+            }
+            return vocabList.getVocabAtIndex(index);
+        }
+    }
+}
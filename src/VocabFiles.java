@@ -0,0 +1,173 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens vocabulary files for reading and writing, handling gzip compression transparently.
+ * <p>
+ * Files are read and written as UTF-8. A file is read as gzip when it starts with the gzip magic bytes,
+ * whatever its name, and is decompressed while it streams into the caller's parser. A file whose name ends
+ * in {@code .gz} is written compressed, in parallel blocks, through a {@link ParallelGzipOutputStream}.
+ * No temporary uncompressed copy is ever made.
+ * </p>
+ */
+final class VocabFiles {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int GZIP_MAGIC_1 = 0x1f;
+    private static final int GZIP_MAGIC_2 = 0x8b;
+
+    private VocabFiles() {
+    }
+
+    /**
+     * Returns whether a file with this name is written compressed.
+     *
+     * @param fileName the file name
+     * @return {@code true} if the name ends in {@code .gz}
+     */
+    static boolean isCompressedName(String fileName) {
+        return fileName.toLowerCase().endsWith(".gz");
+    }
+
+    /**
+     * Opens a vocabulary file for reading, decompressing it if it is gzip.
+     *
+     * @param fileName the file to read
+     * @return a reader over the text of the file
+     * @throws IOException if the file cannot be opened or its gzip header is damaged
+     */
+    static BufferedReader openReader(String fileName) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(fileName), BUFFER_SIZE);
+        try {
+            in.mark(2);
+            boolean compressed = in.read() == GZIP_MAGIC_1 && in.read() == GZIP_MAGIC_2;
+            in.reset();
+            if (compressed) {
+                in = new GZIPInputStream(in, BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a vocabulary file for writing, compressing it if its name ends in {@code .gz}.
+     *
+     * @param fileName the file to write
+     * @return a writer that must be closed to complete the file
+     * @throws FileNotFoundException if the file cannot be created
+     */
+    static PrintWriter openWriter(String fileName) throws FileNotFoundException {
+        OutputStream out = new FileOutputStream(fileName);
+        if (isCompressedName(fileName)) {
+            out = new ParallelGzipOutputStream(out);
+        } else {
+            out = new BufferedOutputStream(out, BUFFER_SIZE);
+        }
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+
+    /**
+     * Writes a snapshot of the vocabulary in the {@code #topic} file format.
+     *
+     * @param snapshot the topics and words to write
+     * @param pw the writer receiving the text
+     */
+    static void write(PersistentVocabList snapshot, PrintWriter pw) {
+        // Iterate through each topic in the snapshot
+        for (PersistentVocabList.Entry entry : snapshot) {
+            pw.println("#" + entry.getTopic());
+
+            // iterate through each word of the topic
+            for (String word : entry.getWords()) {
+                pw.println(word);
+            }
+        }
+    }
+
+    /**
+     * Reads vocabulary text in the {@code #topic} file format into a list. A topic that is already in the list
+     * gets the new words instead of a second copy of the topic, and words it already has are skipped. The words
+     * of each topic are added in one sorted pass with {@link WordList#addAll(java.util.Collection)}. Words
+     * before the first topic belong to no topic and are ignored.
+     *
+     * @param reader the text to read
+     * @param vocabList the list receiving the topics and words
+     * @throws IOException if reading fails
+     */
+    static void read(BufferedReader reader, VocabList vocabList) throws IOException {
+        String line;
+        Vocab currVocab = null;
+        // the words of the current topic, added together when the topic ends
+        ArrayList<String> batch = new ArrayList<>();
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+
+            // Skip blank lines
+            if (line.isEmpty()) {
+                continue;
+            }
+
+            if (line.startsWith("#")) {
+                if (currVocab != null) {
+                    currVocab.getWords().addAll(batch);
+                    batch.clear();
+                }
+                // Extract the topic name
+                String currTopic = line.substring(1).trim();
+                int index = vocabList.indexOfTopic(currTopic);
+                if (index < 0) {
+                    vocabList.add(currTopic);
+                    index = vocabList.size() - 1;
+                }
+                currVocab = vocabList.getVocabAtIndex(index);
+                continue;
+            }
+
+            if (currVocab != null) {
+                batch.add(line);
+            }
+        }
+        if (currVocab != null) {
+            currVocab.getWords().addAll(batch);
+        }
+    }
+
+    /**
+     * Moves a fully written temporary file over its target, atomically where the file system allows it, so
+     * readers and a crash only ever see the old or the new content.
+     *
+     * @param temp the written file, in the same directory as the target
+     * @param target the file to replace
+     * @throws IOException if the move fails
+     */
+    static void replace(File temp, File target) throws IOException {
+        Path from = temp.toPath();
+        try {
+            Files.move(from, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.FileNotFoundException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Generates synthetic vocabulary files in the {@code #topic} format, for trying the program on large inputs.
+ * <p>
+ * Every topic gets the same number of distinct words. A share of each topic's words, the overlap ratio, is drawn
+ * from a pool shared by all topics, so the same word appears in several topics as it does in real vocabularies;
+ * the rest are unique to the topic. Word lengths follow a normal distribution clipped to a range, and words are
+ * written in random order, like a file produced by another tool. The same seed always produces the same file.
+ * </p>
+ * <p>
+ * Usage: {@code java VocabGenerator [--topics=N] [--words=N] [--overlap=R] [--length-mean=L] [--length-sd=S]
+ * [--min-length=L] [--max-length=L] [--seed=N] [--out=file]}. Without {@code --out} the text goes to standard
+ * output; a file name ending in {@code .gz} is written compressed.
+ * </p>
+ */
+public class VocabGenerator {
+
+    private int topics = 100;
+    private int wordsPerTopic = 1000;
+    private double overlap = 0.2;
+    private double lengthMean = 8;
+    private double lengthDeviation = 3;
+    private int minLength = 2;
+    private int maxLength = 20;
+    private long seed = 1;
+
+    public static void main(String[] args) throws FileNotFoundException {
+        VocabGenerator generator = new VocabGenerator();
+        String out = null;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--topics=")) {
+                generator.setTopics(Integer.parseInt(value));
+            } else if (arg.startsWith("--words=")) {
+                generator.setWordsPerTopic(Integer.parseInt(value));
+            } else if (arg.startsWith("--overlap=")) {
+                generator.setOverlap(Double.parseDouble(value));
+            } else if (arg.startsWith("--length-mean=")) {
+                generator.setLengthMean(Double.parseDouble(value));
+            } else if (arg.startsWith("--length-sd=")) {
+                generator.setLengthDeviation(Double.parseDouble(value));
+            } else if (arg.startsWith("--min-length=")) {
+                generator.setLengthRange(Integer.parseInt(value), generator.maxLength);
+            } else if (arg.startsWith("--max-length=")) {
+                generator.setLengthRange(generator.minLength, Integer.parseInt(value));
+            } else if (arg.startsWith("--seed=")) {
+                generator.setSeed(Long.parseLong(value));
+            } else if (arg.startsWith("--out=")) {
+                out = value;
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        PrintWriter pw = out == null
+                ? new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : VocabFiles.openWriter(out);
+        generator.write(pw);
+        pw.close();
+        if (pw.checkError()) {
+            System.err.println("I/O error: could not write " + (out == null ? "the output" : out));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Sets the number of topics.
+     *
+     * @param topics the number of topics, at least 0
+     */
+    public void setTopics(int topics) {
+        if (topics < 0) {
+            throw new IllegalArgumentException("The number of topics cannot be negative");
+        }
+        this.topics = topics;
+    }
+
+    /**
+     * Sets the number of words in every topic.
+     *
+     * @param wordsPerTopic the number of words, at least 0
+     */
+    public void setWordsPerTopic(int wordsPerTopic) {
+        if (wordsPerTopic < 0) {
+            throw new IllegalArgumentException("The number of words cannot be negative");
+        }
+        this.wordsPerTopic = wordsPerTopic;
+    }
+
+    /**
+     * Sets the share of each topic's words that come from the pool shared by all topics.
+     *
+     * @param overlap a ratio from 0, every word unique to its topic, to 1, every word from the shared pool
+     */
+    public void setOverlap(double overlap) {
+        if (!(overlap >= 0 && overlap <= 1)) {
+            throw new IllegalArgumentException("The overlap ratio must be between 0 and 1");
+        }
+        this.overlap = overlap;
+    }
+
+    /**
+     * Sets the mean word length.
+     *
+     * @param lengthMean the mean number of letters
+     */
+    public void setLengthMean(double lengthMean) {
+        this.lengthMean = lengthMean;
+    }
+
+    /**
+     * Sets the standard deviation of the word length.
+     *
+     * @param lengthDeviation the deviation in letters, 0 for words of the same length
+     */
+    public void setLengthDeviation(double lengthDeviation) {
+        if (lengthDeviation < 0) {
+            throw new IllegalArgumentException("The deviation cannot be negative");
+        }
+        this.lengthDeviation = lengthDeviation;
+    }
+
+    /**
+     * Sets the range word lengths are clipped to.
+     *
+     * @param minLength the shortest word, at least 1
+     * @param maxLength the longest word, at least {@code minLength}
+     */
+    public void setLengthRange(int minLength, int maxLength) {
+        if (minLength < 1 || maxLength < minLength) {
+            throw new IllegalArgumentException("Invalid word length range " + minLength + "-" + maxLength);
+        }
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Sets the seed of the random generator.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the vocabulary.
+     *
+     * @param pw the writer receiving the text
+     */
+    public void write(PrintWriter pw) {
+        Random random = new Random(seed);
+        int sharedPerTopic = (int) Math.round(wordsPerTopic * overlap);
+        // large enough that topics share some of their words, not all of them
+        ArrayList<String> pool = new ArrayList<>();
+        HashSet<String> taken = new HashSet<>();
+        for (int i = 0; i < 2 * sharedPerTopic; i++) {
+            String word = newWord(random);
+            if (taken.add(word)) {
+                pool.add(word);
+            }
+        }
+
+        HashSet<String> topicWords = new HashSet<>();
+        ArrayList<String> order = new ArrayList<>();
+        for (int t = 1; t <= topics; t++) {
+            topicWords.clear();
+            order.clear();
+            while (order.size() < sharedPerTopic && order.size() < pool.size()) {
+                String word = pool.get(random.nextInt(pool.size()));
+                if (topicWords.add(word)) {
+                    order.add(word);
+                }
+            }
+            int attempts = 0;
+            while (order.size() < wordsPerTopic && attempts++ < 100 * wordsPerTopic) {
+                String word = newWord(random);
+                // unique words stay out of the shared pool, so the overlap ratio holds
+                if (!taken.contains(word) && topicWords.add(word)) {
+                    order.add(word);
+                }
+            }
+            // shared and unique words interleaved
+            for (int i = order.size() - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                String word = order.get(i);
+                order.set(i, order.get(j));
+                order.set(j, word);
+            }
+
+            pw.println("#topic " + t);
+            for (String word : order) {
+                pw.println(word);
+            }
+        }
+        pw.flush();
+    }
+
+    private String newWord(Random random) {
+        long length = Math.round(lengthMean + random.nextGaussian() * lengthDeviation);
+        length = Math.max(minLength, Math.min(maxLength, length));
+        char[] letters = new char[(int) length];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+}
@@ -1,4 +1,10 @@
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A doubly linked list that manages vocabulary topics. Each node in the list contains a {@link Vocab} object
@@ -6,7 +12,7 @@ import java.util.ArrayList;
  * deleting them, and performing searches and other operations related to vocabulary management.
  */
 
-class VocabList {
+class VocabList implements Iterable<Vocab> {
 	
 	/**
      * A private inner class representing a doubly linked list node. Each node holds a {@link Vocab} object,
@@ -42,12 +48,41 @@ class VocabList {
 	
     private DNode head;
     private DNode tail;
+    private int count;
+    
+    // indexes and other observers that are told about every change to the topics or their words
+    private ArrayList<VocabListener> listeners = new ArrayList<>();
+    
     /**
      * Constructs an empty {@code VocabList}.
      */
     public VocabList() {
     	head = null;
     	tail = null;
+    	count = 0;
+    }
+    
+    /**
+     * Registers a listener that is notified after every change to the topics in this list or to their words.
+     * Topics already in the list are reported to the new listener as added, so it starts out up to date.
+     * 
+     * @param listener The listener to register.
+     */
+    public void addListener(VocabListener listener) {
+        listeners.add(listener);
+        int index = 0;
+        for (DNode current = head; current != null; current = current.next) {
+            listener.topicAdded(index++, current.vocab);
+        }
+    }
+    
+    /**
+     * Unregisters a listener previously added with {@link #addListener(VocabListener)}.
+     * 
+     * @param listener The listener to remove.
+     */
+    public void removeListener(VocabListener listener) {
+        listeners.remove(listener);
     }
 
     
@@ -67,6 +102,7 @@ class VocabList {
             newNode.prev = tail;
             tail = newNode;
         }
+        linked(count, newVocab);
     }
      
      /**
@@ -77,13 +113,24 @@ class VocabList {
       * @param topic The topic of the new vocabulary to be added.
       */
     public void addAtIndex(int index, String topic) {
+        addVocabAtIndex(index, new Vocab(topic));
+    }
+    
+    /**
+     * Links an existing vocabulary, together with the words it already holds, at the specified index in the list.
+     * This is how a removed topic is put back, for example when a removal is undone.
+     * If the index is invalid (out of bounds), a message is printed and the operation is not performed.
+     * 
+     * @param index The index at which the vocabulary should be inserted.
+     * @param newVocab The vocabulary to insert. It must not be in any list already.
+     */
+    void addVocabAtIndex(int index, Vocab newVocab) {
         // If index is less than 0, or the list is empty and index is not 0, or index is greater than the number of elements in the list, do nothing.
         if (index < 0 || (index != 0 && head == null) || index > size()) {
             System.out.println("Invalid index.");
             return;
         }
         
-        Vocab newVocab = new Vocab(topic);
         DNode newNode = new DNode(newVocab, null, null);
         
         if (index == 0) {
@@ -116,6 +163,7 @@ class VocabList {
             }
             current.next = newNode;
         }
+        linked(index, newVocab);
     }
 
     
@@ -134,6 +182,7 @@ class VocabList {
 
         // If index is 0, delete the head node
         if (index == 0) {
+            Vocab removed = head.vocab;
             if (head == tail) {
                 // If there's only one node in the list
                 head = null;
@@ -142,6 +191,7 @@ class VocabList {
                 head = head.next;
                 head.prev = null;
             }
+            unlinked(index, removed);
             return;
         }
 
@@ -160,6 +210,7 @@ class VocabList {
             current.prev.next = current.next;
             current.next.prev = current.prev;
         }
+        unlinked(index, current.vocab);
     }
 
     
@@ -169,15 +220,7 @@ class VocabList {
      * @return The size of the list.
      */
     public int size() {
-        int count = 0;
-        DNode current = head;
-        
-        // Traverse the list and count the number of nodes
-        while (current != null) {
-            count++;
-            current = current.next;
-        }
-        
+        // the count is kept up to date by every insertion and deletion
         return count;
     }
     
@@ -255,7 +298,138 @@ class VocabList {
         }
         return false; // Topic not found
     }
+    
+    /**
+     * Returns the position of the vocabulary topic that matches the specified topic, ignoring case
+     * like {@link #containsTopic(String)}.
+     * 
+     * @param topic The topic to search for in the list.
+     * @return The index of the first matching topic, or -1 if the list does not contain it.
+     */
+    public int indexOfTopic(String topic) {
+        int index = 0;
+        for (DNode current = head; current != null; current = current.next) {
+            if (current.vocab.getTopic().equalsIgnoreCase(topic)) {
+                return index;
+            }
+            index++;
+        }
+        return -1;
+    }
+    
+    
+    /**
+     * Returns an iterator over the vocabularies in list order. Walking the list this way visits
+     * each node once, unlike repeated calls to {@link #getVocabAtIndex(int)}.
+     * 
+     * @return an iterator over the vocabularies of the list
+     */
+    @Override
+    public Iterator<Vocab> iterator() {
+        return new Iterator<Vocab>() {
+            private DNode current = head;
+            
+            @Override
+            public boolean hasNext() {
+                return current != null;
+            }
+            
+            @Override
+            public Vocab next() {
+                if (current == null) {
+                    throw new NoSuchElementException();
+                }
+                Vocab vocab = current.vocab;
+                current = current.next;
+                return vocab;
+            }
+        };
+    }
+    
+    /**
+     * Returns a spliterator over the vocabularies in list order. The topics are first copied into an array, so
+     * the spliterator knows its size and splits into even halves, which a linked list cannot do; a parallel
+     * stream then spreads the topics evenly over the threads.
+     * 
+     * @return a spliterator over the vocabularies of the list
+     */
+    @Override
+    public Spliterator<Vocab> spliterator() {
+        Vocab[] topics = new Vocab[count];
+        int index = 0;
+        for (DNode current = head; current != null; current = current.next) {
+            topics[index++] = current.vocab;
+        }
+        return Spliterators.spliterator(topics, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT);
+    }
+    
+    /**
+     * Returns a sequential stream over the vocabularies in list order.
+     * 
+     * @return a stream of the vocabularies
+     */
+    public Stream<Vocab> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+    
+    /**
+     * Returns a parallel stream over the vocabularies, which keeps list order wherever the stream operations
+     * are ordered, such as {@code collect} into a list or {@code reduce}. The list must not change while the
+     * stream runs.
+     * 
+     * @return a parallel stream of the vocabularies
+     */
+    public Stream<Vocab> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+    
+    /**
+     * Bookkeeping after a node has been linked in: updates the count, attaches the vocabulary and notifies listeners.
+     */
+    private void linked(int index, Vocab vocab) {
+        count++;
+        vocab.setList(this);
+        for (VocabListener listener : listeners) {
+            listener.topicAdded(index, vocab);
+        }
+    }
+    
+    /**
+     * Bookkeeping after a node has been unlinked: updates the count, detaches the vocabulary and notifies listeners.
+     */
+    private void unlinked(int index, Vocab vocab) {
+        count--;
+        vocab.setList(null);
+        for (VocabListener listener : listeners) {
+            listener.topicRemoved(index, vocab);
+        }
+    }
+    
+    /**
+     * Notifies listeners that a vocabulary in this list was renamed. Called by {@link Vocab#setTopic(String)}.
+     */
+    void fireTopicRenamed(Vocab vocab, String oldTopic) {
+        for (VocabListener listener : listeners) {
+            listener.topicRenamed(vocab, oldTopic);
+        }
+    }
+    
+    /**
+     * Notifies listeners that a word was added to a vocabulary in this list. Called by {@link Vocab}.
+     */
+    void fireWordAdded(Vocab vocab, String word) {
+        for (VocabListener listener : listeners) {
+            listener.wordAdded(vocab, word);
+        }
+    }
+    
+    /**
+     * Notifies listeners that a word was removed from a vocabulary in this list. Called by {@link Vocab}.
+     */
+    void fireWordDeleted(Vocab vocab, String word) {
+        for (VocabListener listener : listeners) {
+            listener.wordDeleted(vocab, word);
+        }
+    }
 
 }
-
-
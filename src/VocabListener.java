@@ -0,0 +1,56 @@
+/**
+ * Receives notifications whenever a {@link VocabList} or one of the {@link WordList}s it holds changes.
+ * <p>
+ * Indexes that live next to the linked lists register themselves with {@link VocabList#addListener(VocabListener)}
+ * so they can be updated incrementally on every mutation instead of being rebuilt by scanning every word.
+ * All methods have empty default bodies, so a listener only overrides the events it cares about.
+ * </p>
+ */
+interface VocabListener {
+
+    /**
+     * Called after a vocabulary has been linked into the list. The vocabulary may already hold words
+     * (for example when a removed topic is put back), so listeners should account for them.
+     *
+     * @param index the position of the new topic in the list
+     * @param vocab the vocabulary that was added
+     */
+    default void topicAdded(int index, Vocab vocab) {
+    }
+
+    /**
+     * Called after a vocabulary has been unlinked from the list. The vocabulary still holds its words.
+     *
+     * @param index the position the topic had in the list
+     * @param vocab the vocabulary that was removed
+     */
+    default void topicRemoved(int index, Vocab vocab) {
+    }
+
+    /**
+     * Called after the topic name of a vocabulary in the list has changed.
+     *
+     * @param vocab the vocabulary that was renamed
+     * @param oldTopic the topic name before the change
+     */
+    default void topicRenamed(Vocab vocab, String oldTopic) {
+    }
+
+    /**
+     * Called after a word has been inserted into the word list of a vocabulary in the list.
+     *
+     * @param vocab the vocabulary that owns the word list
+     * @param word the word as it is stored in the list
+     */
+    default void wordAdded(Vocab vocab, String word) {
+    }
+
+    /**
+     * Called after a word has been removed from the word list of a vocabulary in the list.
+     *
+     * @param vocab the vocabulary that owns the word list
+     * @param word the word that was removed
+     */
+    default void wordDeleted(Vocab vocab, String word) {
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a vocabulary file and works out what changed each time it is rewritten.
+ * <p>
+ * A background thread waits on a {@link WatchService} for the file's directory. When the file is modified or
+ * replaced, the thread waits until the writes have stopped for a moment, reads the file with a
+ * {@link TopicBlockReader} and diffs it against the version it read before. The differences are queued as a
+ * {@link VocabDiff.Recording}; they are applied by whoever owns the list, on its own thread, through
+ * {@link #applyPending(VocabDiff.Sink)}, so the list is only ever touched by one thread and an unchanged topic
+ * costs nothing to apply. The first recording, queued when the watcher starts, holds the whole file.
+ * </p>
+ * <p>
+ * Every change event rereads the whole file, so a reload costs time proportional to the file's size. Sections
+ * whose text has not changed are recognised by their fingerprint and keep their earlier block, so only the
+ * changed topics are parsed, sorted and diffed. The earlier version the diff needs is kept as those blocks,
+ * a second copy of the file's words next to the live list for as long as the file is watched.
+ * </p>
+ */
+class VocabWatcher implements Closeable {
+
+    // how long the file must stay untouched before it is read, so a file being written is not read half-way
+    private static final long QUIET_MILLIS = 200;
+
+    private final Path file;
+    private final WatchService service;
+    private final Thread thread;
+    private final ConcurrentLinkedQueue<VocabDiff.Recording> pending = new ConcurrentLinkedQueue<>();
+    // the topics of the file as last read, only used by the watching thread once started
+    private List<VocabDiff.Block> baseline;
+    private volatile String lastError;
+
+    /**
+     * Reads a vocabulary file and starts watching it.
+     *
+     * @param fileName the file to watch
+     * @throws IOException if the file cannot be read or its directory cannot be watched
+     */
+    public VocabWatcher(String fileName) throws IOException {
+        file = Paths.get(fileName).toAbsolutePath();
+        service = file.getFileSystem().newWatchService();
+        try {
+            // renames into place show up as created files, editors and jobs writing in place as modified ones
+            file.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            baseline = read();
+        } catch (IOException e) {
+            service.close();
+            throw e;
+        } catch (UncheckedIOException e) {
+            service.close();
+            throw e.getCause();
+        }
+
+        VocabDiff.Recording initial = new VocabDiff.Recording();
+        // the whole file, topic by topic in file order
+        VocabDiff.added(baseline.iterator(), initial);
+        pending.add(initial);
+
+        thread = new Thread(this::watch, "vocab-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the watched file.
+     *
+     * @return the absolute path of the file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns and clears the message of the last failed attempt to read the file.
+     *
+     * @return the error message, or null if reading has not failed since the last call
+     */
+    public String takeError() {
+        String error = lastError;
+        lastError = null;
+        return error;
+    }
+
+    /**
+     * Replays every change detected so far, oldest first, into a sink.
+     *
+     * @param sink receives the changes, usually a {@link VocabDiff.PatchApplier}
+     * @return the number of versions of the file applied
+     */
+    public int applyPending(VocabDiff.Sink sink) {
+        int versions = 0;
+        VocabDiff.Recording recording;
+        while ((recording = pending.poll()) != null) {
+            recording.replay(sink);
+            versions++;
+        }
+        return versions;
+    }
+
+    /**
+     * Stops watching the file. Changes already detected are kept until applied.
+     */
+    @Override
+    public void close() throws IOException {
+        service.close();
+        thread.interrupt();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean touched = takeEvents(key);
+                if (!touched) {
+                    continue;
+                }
+                // wait for the writer to finish, whatever else it touches in the meantime
+                while ((key = service.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    takeEvents(key);
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Empties a key and reports whether any of its events was about the watched file.
+     */
+    private boolean takeEvents(WatchKey key) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                touched = true;
+            }
+        }
+        key.reset();
+        return touched;
+    }
+
+    private void reload() {
+        List<VocabDiff.Block> blocks;
+        try {
+            blocks = read();
+        } catch (IOException | UncheckedIOException e) {
+            // the file may be missing between a delete and a rename; the next event tries again
+            lastError = e.getMessage();
+            return;
+        }
+        VocabDiff.Recording changes = new VocabDiff.Recording();
+        VocabDiff.diff(baseline.iterator(), blocks.iterator(), changes);
+        baseline = blocks;
+        if (changes.size() > 0) {
+            pending.add(changes);
+        }
+    }
+
+    private List<VocabDiff.Block> read() throws IOException {
+        ArrayList<VocabDiff.Block> blocks = new ArrayList<>();
+        try (TopicBlockReader reader = new TopicBlockReader(file.toString())) {
+            if (baseline != null) {
+                HashMap<String, VocabDiff.Block> byTopic = new HashMap<>();
+                for (VocabDiff.Block block : baseline) {
+                    byTopic.put(block.getTopic(), block);
+                }
+                reader.reuse(byTopic);
+            }
+            while (reader.hasNext()) {
+                blocks.add(reader.next());
+            }
+        }
+        return blocks;
+    }
+}
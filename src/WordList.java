@@ -1,18 +1,25 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * The {@code WordList} class represents a list of words organized in a linked list. 
  * This class provides methods to add, delete, and modify words within the list, as well as 
  * to search for words and print all words starting with a given letter.
  */
-class WordList {
+class WordList implements Iterable<String> {
 	
 	/**
-     * Represents a node in the linked list containing a single word and a reference to the next node.
+     * Represents a node in the linked list containing a single word, its precomputed sort key
+     * and a reference to the next node.
      */
 	private class WordNode {
 		
 		String word;
+		byte[] key;
 		WordNode next;
 		
 		/**
@@ -20,6 +27,7 @@ class WordList {
          */
 		public WordNode(){
 			word = null;
+			key = null;
 			next = null;
 		}
 		
@@ -27,17 +35,32 @@ class WordList {
          * Constructs a new node with specified word and next node.
          *
          * @param word the word the node will hold
+         * @param key the sort key of the word, as returned by {@link WordOrder#key(String)}
          * @param nextValue the next node in the linked list
          */
-		public WordNode(String word, WordNode nextValue){
+		public WordNode(String word, byte[] key, WordNode nextValue){
 			this.word = word;
+			this.key = key;
 			this.next = nextValue;
 		}
 	}
 	
+	// batches at least this large are sorted on all cores
+	private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+	
 	// the only attributes in this linked list class
 	private WordNode head;
 	private WordNode tail;
+	private int count;
+	
+	// the vocabulary this list belongs to, told about every change so it can notify listeners
+	private Vocab owner;
+	
+	// the word deleted last and whether a copy of it is left, so a listener told about the deletion can call
+	// contains() without walking the list; copies are neighbours, so the nodes around the deleted one know it.
+	// Every other change clears it
+	private String lastDeleted;
+	private boolean lastDeletedRemains;
 	
 	/**
      * Constructs an empty {@code WordList}.
@@ -45,6 +68,17 @@ class WordList {
 	public WordList() {
 		head = null;
 		tail = null;
+		count = 0;
+	}
+	
+	
+	/**
+     * Sets the vocabulary that owns this list. The owner is notified after every word that is added or deleted.
+     *
+     * @param owner the vocabulary that holds this list, or {@code null} to stop notifications
+     */
+	void setOwner(Vocab owner) {
+		this.owner = owner;
 	}
 	
 	
@@ -54,13 +88,7 @@ class WordList {
      * @return the size of the list as an integer
      */
 	public int size() {
-		int count = 0;
-		WordNode position = head;
-		
-		while (position != null) {
-			count++;
-			position = position.next;
-		}
+		// the count is kept up to date by every insertion and deletion
 		return count;
 	}
 	
@@ -92,44 +120,164 @@ class WordList {
      * @return {@code true} if the word is in the list; {@code false} otherwise
      */
 	public boolean contains(String word) {
+		if (lastDeleted != null && lastDeleted.equals(word))
+			return lastDeletedRemains;
 		return (find(word) != null);
 	}
 	
 	
 	/**
-     * Adds a word to the list in its sorted position.
+     * Adds a word to the list in its sorted position, as defined by {@link WordOrder}.
      *
      * @param wordToAdd the word to be added to the list
      */
 	public void add(String wordToAdd) {
+		lastDeleted = null;
 		String word = wordToAdd.toLowerCase();
+		// computed once here so every comparison below is a byte comparison
+		byte[] key = WordOrder.key(word);
 		
-		// If the list is empty or the word should be inserted at the beginning
-	    if (head == null || head.word.compareTo(word) > 0) {
-	        head = new WordNode(word, head);
+		// If the list is empty or the word should be inserted at the beginning (before an equal head too)
+	    if (head == null || WordOrder.compare(head.key, head.word, key, word) >= 0) {
+	        head = new WordNode(word, key, head);
 	        // If the list is empty, set tail to head
 	        if (tail == null) {
 	            tail = head;
 	        }
+	        count++;
+	        if (owner != null)
+	        	owner.wordAdded(word);
 	        return;
 	    }
 	    
 	    // Traverse the list to find the correct position to insert the word
 	    WordNode current = head;
 	    WordNode prev = null;
-	    while(current != null && current.word.compareTo(word) < 0) {
+	    while(current != null && WordOrder.compare(current.key, current.word, key, word) < 0) {
 	    	prev = current;
 	    	current = current.next;
 	    }
 	    
 	    // insert the word at the correct position
 	    if (current == null) { // insert at the end
-	    	tail.next = new WordNode(word, null);
+	    	tail.next = new WordNode(word, key, null);
 	    	tail = tail.next;
 	    } else { // insert in the middle at the right position
-	    	prev.next = new WordNode(word, current);
+	    	prev.next = new WordNode(word, key, current);
 	    }
-
+	    count++;
+	    
+	    if (owner != null)
+	    	owner.wordAdded(word);
+	}
+	
+	/**
+     * Adds a batch of words in one pass. The words are put in lower case and sorted, copies within the batch
+     * and words the list already holds are skipped, and the sorted batch is merged into the list in a single
+     * walk instead of walking to each word's position separately. Large batches are sorted with
+     * {@link Arrays#parallelSort}. The owner is notified of every word actually added, in sorted order.
+     *
+     * @param wordsToAdd the words to add, in any order
+     * @return the number of words added
+     */
+	public int addAll(Collection<String> wordsToAdd) {
+		return addAll(wordsToAdd, false);
+	}
+	
+	/**
+     * Adds a batch of words in one pass, like {@link #addAll(Collection)}, optionally keeping every copy the
+     * way {@link #add(String)} does, used to put back words deleted together.
+     *
+     * @param wordsToAdd the words to add, in any order
+     * @param keepCopies whether copies within the batch and words the list already holds are added too
+     * @return the number of words added
+     */
+	int addAll(Collection<String> wordsToAdd, boolean keepCopies) {
+		lastDeleted = null;
+		WordNode[] batch = new WordNode[wordsToAdd.size()];
+		int n = 0;
+		for (String wordToAdd : wordsToAdd) {
+			String word = wordToAdd.toLowerCase();
+			batch[n++] = new WordNode(word, WordOrder.key(word), null);
+		}
+		Comparator<WordNode> order = (a, b) -> WordOrder.compare(a.key, a.word, b.key, b.word);
+		if (n >= PARALLEL_SORT_THRESHOLD) {
+			Arrays.parallelSort(batch, 0, n, order);
+		} else {
+			Arrays.sort(batch, 0, n, order);
+		}
+		
+		int added = 0;
+		// the last node known to sort before the next batch word, and the node after it
+		WordNode prev = null;
+		WordNode current = head;
+		String previousWord = null;
+		for (int i = 0; i < n; i++) {
+			WordNode node = batch[i];
+			// equal words are next to each other once sorted
+			if (!keepCopies && node.word.equals(previousWord))
+				continue;
+			previousWord = node.word;
+			
+			while (current != null && WordOrder.compare(current.key, current.word, node.key, node.word) < 0) {
+				prev = current;
+				current = current.next;
+			}
+			if (!keepCopies && current != null && current.word.equals(node.word))
+				continue;
+			
+			// link the node in between prev and current
+			node.next = current;
+			if (prev == null) {
+				head = node;
+			} else {
+				prev.next = node;
+			}
+			if (current == null) {
+				tail = node;
+			}
+			prev = node;
+			count++;
+			added++;
+			if (owner != null)
+				owner.wordAdded(node.word);
+		}
+		return added;
+	}
+	
+	/**
+     * Hands the words over to a {@link FrozenVocab}: every node is dropped so the garbage collector can reclaim
+     * them, and the owner is not notified, because the words still belong to the vocabulary, only stored in
+     * the frozen arrays. {@link #restore(String[], byte[][], int, int)} puts them back.
+     */
+	void release() {
+		lastDeleted = null;
+		head = null;
+		tail = null;
+		count = 0;
+	}
+	
+	/**
+     * Rebuilds the list from words already in sorted order, taken back from a {@link FrozenVocab} after
+     * {@link #release()}. Copies are kept as they are and the owner is not notified.
+     *
+     * @param words the sorted words
+     * @param keys the sort keys of the words, or {@code null} in the default binary order
+     * @param from the position of the first word to use
+     * @param to the position after the last word to use
+     */
+	void restore(String[] words, byte[][] keys, int from, int to) {
+		lastDeleted = null;
+		for (int i = from; i < to; i++) {
+			WordNode node = new WordNode(words[i], keys == null ? null : keys[i], null);
+			if (head == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+			count++;
+		}
 	}
 	
 	/**
@@ -138,6 +286,7 @@ class WordList {
      * @param word the word to be deleted from the list
      */
 	public void delete(String word) {
+		lastDeleted = null;
 		// If the list is empty, do nothing
 	    if (head == null)
 	        return;
@@ -149,12 +298,16 @@ class WordList {
 	    	// if there was only one word in the list and now the head is null, update the tail to null as well
 	    	if (head == null)
 	    		tail = null;
+	    	count--;
+	    	deleted(word, head);
+	    	if (owner != null)
+	    		owner.wordDeleted(word);
 	    	return;
 	    }
 	    
 	    // Traverse the list to find the node before the one containing the word
 	    WordNode prev = head;
-	    if (prev.next != null && prev.next.word.equals(word)) {
+	    while (prev.next != null && !prev.next.word.equals(word)) {
 	    	prev = prev.next;
 	    }
 		
@@ -165,11 +318,80 @@ class WordList {
 	    	// if the word was the last node, update the tail;
 	    	if (prev.next == null)
 	    		tail = prev;
+	    	count--;
+	    	deleted(word, prev.next);
+	    	if (owner != null)
+	    		owner.wordDeleted(word);
 	    } 
 	}
 	
 	
 	
+	/**
+     * Deletes a batch of words in one pass: the batch is sorted and one occurrence of each of its words is
+     * unlinked in a single walk over the list, instead of a walk from the head for every word. A word listed
+     * twice deletes two copies. The owner is notified of every word actually deleted, in sorted order.
+     *
+     * @param wordsToDelete the words to delete, in any order
+     * @return the number of words deleted
+     */
+	public int deleteAll(Collection<String> wordsToDelete) {
+		lastDeleted = null;
+		WordNode[] batch = new WordNode[wordsToDelete.size()];
+		int n = 0;
+		for (String word : wordsToDelete) {
+			batch[n++] = new WordNode(word, WordOrder.key(word), null);
+		}
+		Comparator<WordNode> order = (a, b) -> WordOrder.compare(a.key, a.word, b.key, b.word);
+		if (n >= PARALLEL_SORT_THRESHOLD) {
+			Arrays.parallelSort(batch, 0, n, order);
+		} else {
+			Arrays.sort(batch, 0, n, order);
+		}
+		
+		int deleted = 0;
+		// the last node kept before the next batch word, and the node after it
+		WordNode prev = null;
+		WordNode current = head;
+		for (int i = 0; i < n; i++) {
+			WordNode node = batch[i];
+			while (current != null && WordOrder.compare(current.key, current.word, node.key, node.word) < 0) {
+				prev = current;
+				current = current.next;
+			}
+			if (current == null || !current.word.equals(node.word))
+				continue;
+			
+			// unlink current, prev stays the last kept node
+			current = current.next;
+			if (prev == null) {
+				head = current;
+			} else {
+				prev.next = current;
+			}
+			if (current == null) {
+				tail = prev;
+			}
+			count--;
+			deleted++;
+			deleted(node.word, current);
+			if (owner != null)
+				owner.wordDeleted(node.word);
+		}
+		return deleted;
+	}
+	
+	
+	
+	/**
+     * Remembers a word just unlinked, given the node that took its place. The first copy of a word is the one
+     * deleted, so a copy left behind is that next node.
+     */
+	private void deleted(String word, WordNode next) {
+		lastDeleted = word;
+		lastDeletedRemains = next != null && next.word.equals(word);
+	}
+	
 	/**
      * Prints all words in the list in specific format.
      */
@@ -225,6 +447,34 @@ class WordList {
 	    // Return the word stored in the node at the specified index
 	    return current.word;
 	}
+	
+	
+	/**
+     * Returns an iterator over the words in sorted order. Walking the list this way visits
+     * each node once, unlike repeated calls to {@link #getWordAtIndex(int)}.
+     *
+     * @return an iterator over the words of the list
+     */
+	@Override
+	public Iterator<String> iterator() {
+		return new Iterator<String>() {
+			private WordNode current = head;
+			
+			@Override
+			public boolean hasNext() {
+				return current != null;
+			}
+			
+			@Override
+			public String next() {
+				if (current == null)
+					throw new NoSuchElementException();
+				String word = current.word;
+				current = current.next;
+				return word;
+			}
+		};
+	}
 
 
 	
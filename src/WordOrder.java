@@ -0,0 +1,179 @@
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The order in which words are sorted in a {@link WordList} and everywhere words are listed.
+ * <p>
+ * By default words are ordered with {@link String#compareTo(String)}. After {@link #setLocale(Locale)} they
+ * follow the rules of that locale's {@link Collator}, so accented and non-English words sort where a reader
+ * expects them. Running a collator on every comparison is slow, so a collation key is computed once per word
+ * with {@link #key(String)} and stored next to it; comparisons on the hot path are then plain unsigned byte
+ * comparisons. Words whose keys are equal are ordered by {@link String#compareTo(String)}, so distinct words
+ * never compare as equal.
+ * </p>
+ */
+final class WordOrder {
+
+    // null while the default binary order is in use
+    private static volatile Collator collator;
+
+    private WordOrder() {
+    }
+
+    /**
+     * Switches to the ordering rules of a locale. This must happen before any word is added to a list,
+     * since existing lists are not re-sorted.
+     *
+     * @param locale the locale whose ordering rules to use, or {@code null} for the default binary order
+     */
+    static void setLocale(Locale locale) {
+        if (locale == null) {
+            collator = null;
+            return;
+        }
+        Collator newCollator = Collator.getInstance(locale);
+        newCollator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+        collator = newCollator;
+    }
+
+    /**
+     * Returns the precomputed sort key of a word.
+     *
+     * @param word the word
+     * @return the collation key bytes, or {@code null} while the default binary order is in use
+     */
+    static byte[] key(String word) {
+        Collator current = collator;
+        return current == null ? null : current.getCollationKey(word).toByteArray();
+    }
+
+    /**
+     * Compares two words by their precomputed keys.
+     *
+     * @param keyA the key of the first word, as returned by {@link #key(String)}
+     * @param a the first word
+     * @param keyB the key of the second word
+     * @param b the second word
+     * @return a negative number, zero or a positive number as the first word sorts before, equal to or after the second
+     */
+    static int compare(byte[] keyA, String a, byte[] keyB, String b) {
+        if (keyA != null && keyB != null) {
+            int cmp = Arrays.compareUnsigned(keyA, keyB);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.compareTo(b);
+    }
+
+    /**
+     * Returns a comparator for this order. It computes keys on every call, so for sorting many words
+     * {@link #sort(List)} is faster.
+     *
+     * @return a comparator over words
+     */
+    static Comparator<String> comparator() {
+        return (a, b) -> compare(key(a), a, key(b), b);
+    }
+
+    /**
+     * Sorts words in this order, computing each word's key only once.
+     *
+     * @param words the words to sort in place
+     */
+    static void sort(List<String> words) {
+        if (collator == null) {
+            words.sort(null);
+            return;
+        }
+        ArrayList<Keyed> keyed = new ArrayList<>(words.size());
+        for (String word : words) {
+            keyed.add(new Keyed(word));
+        }
+        keyed.sort(null);
+        for (int i = 0; i < keyed.size(); i++) {
+            words.set(i, keyed.get(i).word);
+        }
+    }
+
+    /**
+     * Merges runs that are each sorted in this order into one sorted list of words. The runs are merged in
+     * pairs, round after round, so every word is copied once per round and there are log2 of the number of runs
+     * rounds. The words carry the keys their lists already store, so the merge only compares bytes and never
+     * runs the collator.
+     *
+     * @param runs the sorted runs
+     * @return a new list holding the words of all runs, sorted
+     */
+    static ArrayList<String> mergeAll(List<? extends List<Keyed>> runs) {
+        ArrayList<List<Keyed>> round = new ArrayList<>(runs);
+        while (round.size() > 1) {
+            ArrayList<List<Keyed>> next = new ArrayList<>((round.size() + 1) / 2);
+            for (int i = 0; i + 1 < round.size(); i += 2) {
+                next.add(merge(round.get(i), round.get(i + 1)));
+            }
+            if (round.size() % 2 == 1) {
+                next.add(round.get(round.size() - 1));
+            }
+            round = next;
+        }
+        ArrayList<String> merged = new ArrayList<>(round.isEmpty() ? 0 : round.get(0).size());
+        if (!round.isEmpty()) {
+            for (Keyed keyed : round.get(0)) {
+                merged.add(keyed.word);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Merges two sorted runs in a single linear pass.
+     */
+    private static ArrayList<Keyed> merge(List<Keyed> a, List<Keyed> b) {
+        ArrayList<Keyed> merged = new ArrayList<>(a.size() + b.size());
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            if (a.get(i).compareTo(b.get(j)) <= 0) {
+                merged.add(a.get(i++));
+            } else {
+                merged.add(b.get(j++));
+            }
+        }
+        merged.addAll(a.subList(i, a.size()));
+        merged.addAll(b.subList(j, b.size()));
+        return merged;
+    }
+
+    /**
+     * A word paired with its key, used while sorting and merging.
+     */
+    static final class Keyed implements Comparable<Keyed> {
+        final String word;
+        final byte[] key;
+
+        Keyed(String word) {
+            this(word, key(word));
+        }
+
+        /**
+         * Pairs a word with the key already computed for it.
+         *
+         * @param word the word
+         * @param key its key, as returned by {@link WordOrder#key(String)}
+         */
+        Keyed(String word, byte[] key) {
+            this.word = word;
+            this.key = key;
+        }
+
+        @Override
+        public int compareTo(Keyed other) {
+            return compare(key, word, other.key, other.word);
+        }
+    }
+}